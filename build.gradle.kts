@@ -17,6 +17,14 @@ repositories {
     mavenCentral()
 }
 
+// Microbenchmarks, run with ./gradlew jmh (JMH options go through -Pjmh="...", e.g. -Pjmh="NpcCandidate -prof gc")
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+        runtimeClasspath += sourceSets.main.get().output + sourceSets.main.get().runtimeClasspath
+    }
+}
+
 dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter-api:5.6.0")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine")
@@ -55,12 +63,23 @@ dependencies {
     implementation(fileTree("libs") {
         include("*.jar")
     })
+
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.33")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.33")
 }
 
 tasks.getByName<Test>("test") {
     useJUnitPlatform()
 }
 
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args = (project.findProperty("jmh") as String?)?.split(" ") ?: emptyList()
+}
+
 tasks.withType<JavaCompile> {
     options.isIncremental = true
 }
\ No newline at end of file
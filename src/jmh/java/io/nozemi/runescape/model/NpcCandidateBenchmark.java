@@ -0,0 +1,139 @@
+package io.nozemi.runescape.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick of npc sync candidate discovery for every player: the full npc list scan NpcSyncTask used to do, against
+ * the chunk index lookup it does now. Players and npcs are spread over the mainland.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NpcCandidateBenchmark {
+
+	private static final Comparator<Entity> BY_INDEX = Comparator.comparingInt(Entity::index);
+
+	@Param({"500", "1000", "2000"})
+	int players;
+
+	@Param({"10000", "30000"})
+	int npcs;
+
+	@Param({"14", "30"})
+	int viewDistance;
+
+	private Tile[] viewers;
+	private EntityList<Entity> list;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(2048);
+		list = new EntityList<>(0xFFFF, true);
+		for (int i = 0; i < npcs; i++) {
+			Entity npc = new Stub(random);
+			npc.index(list.add(npc));
+		}
+
+		viewers = new Tile[players];
+		for (int i = 0; i < players; i++)
+			viewers[i] = randomTile(random);
+	}
+
+	@Benchmark
+	public void fullScan(Blackhole blackhole) {
+		List<Entity> entries = list.getEntriesList();
+		for (Tile viewer : viewers) {
+			for (int idx = 0; idx < entries.size(); idx++) {
+				Entity npc = entries.get(idx);
+				if (npc == null || viewer.distance(npc.tile()) > viewDistance || viewer.level != npc.tile().level)
+					continue;
+				blackhole.consume(npc);
+			}
+		}
+	}
+
+	@Benchmark
+	public void chunkIndex(Blackhole blackhole) {
+		for (Tile viewer : viewers) {
+			List<Entity> candidates = list.inArea(viewer.area(viewDistance));
+			candidates.sort(BY_INDEX);
+			for (int idx = 0; idx < candidates.size(); idx++) {
+				Entity npc = candidates.get(idx);
+				if (viewer.distance(npc.tile()) > viewDistance || viewer.level != npc.tile().level)
+					continue;
+				blackhole.consume(npc);
+			}
+		}
+	}
+
+	private static Tile randomTile(Random random) {
+		return new Tile(2900 + random.nextInt(500), 3100 + random.nextInt(500));
+	}
+
+	/**
+	 * Just enough of an entity to be filed in a list.
+	 */
+	private static final class Stub extends Entity {
+
+		private Stub(Random random) {
+			super(null, randomTile(random));
+		}
+
+		@Override
+		public boolean isPlayer() {
+			return false;
+		}
+
+		@Override
+		public boolean isNpc() {
+			return true;
+		}
+
+		@Override
+		public void hp(int hp, int exceed) {
+		}
+
+		@Override
+		public int hp() {
+			return 1;
+		}
+
+		@Override
+		public int maxHp() {
+			return 1;
+		}
+
+		@Override
+		protected void die() {
+		}
+
+		@Override
+		public int attackAnimation() {
+			return -1;
+		}
+
+		@Override
+		public void postCycleMovement() {
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+package io.nozemi.runescape.model.map;
+
+import io.nozemi.runescape.model.Area;
+import io.nozemi.runescape.model.Tile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fifty thousand spawned and removed objects over a 300 by 300 area on two levels, looked up through
+ * {@link ObjectOverrides} and through the two lists World kept before: the lookup of an object click, and sending the
+ * overrides of a 104 by 104 view chunk by chunk as syncMap does. The lists are filled with the overrides the index
+ * ended up with, as building them one spawn at a time takes half a minute.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectOverridesBenchmark {
+
+	private static final int OVERRIDES = 50_000;
+	private static final int BASE = 3000;
+	private static final int SIDE = 300;
+
+	private final Random random = new Random(21);
+
+	private MapObj[] objs;
+	private boolean[] removes;
+	private ObjectOverrides overrides;
+	private final List<MapObj> spawnedObjs = new LinkedList<>();
+	private final List<MapObj> removedObjs = new LinkedList<>();
+
+	@Setup
+	public void setup() {
+		objs = new MapObj[OVERRIDES];
+		removes = new boolean[OVERRIDES];
+		for (int i = 0; i < OVERRIDES; i++) {
+			Tile tile = new Tile(BASE + random.nextInt(SIDE), BASE + random.nextInt(SIDE), random.nextInt(2));
+			objs[i] = new MapObj(tile, random.nextInt(30_000), random.nextInt(4) == 0 ? 22 : 10, random.nextInt(4));
+			removes[i] = random.nextInt(3) == 0;
+		}
+
+		overrides = build();
+		Area all = new Area(BASE, BASE, BASE + SIDE - 1, BASE + SIDE - 1);
+		overrides.forEachIn(all, false, spawnedObjs::add);
+		overrides.forEachIn(all, true, removedObjs::add);
+	}
+
+	@Benchmark
+	public ObjectOverrides build() {
+		ObjectOverrides built = new ObjectOverrides();
+		for (int i = 0; i < OVERRIDES; i++) {
+			if (removes[i])
+				built.remove(objs[i]);
+			else
+				built.spawn(objs[i]);
+		}
+		return built;
+	}
+
+	@Benchmark
+	public MapObj objByTileIndexed() {
+		int x = BASE + random.nextInt(SIDE), z = BASE + random.nextInt(SIDE), level = random.nextInt(2);
+
+		ObjectOverrides.TileOverrides tile = overrides.at(x, z, level);
+		if (tile == null || tile.anyRemoved())
+			return null;
+		return tile.firstSpawned();
+	}
+
+	@Benchmark
+	public MapObj objByTileLists() {
+		int x = BASE + random.nextInt(SIDE), z = BASE + random.nextInt(SIDE), level = random.nextInt(2);
+
+		Optional<MapObj> removed = removedObjs.stream().filter(m -> m.tile().equals(x, z, level)).findAny();
+		if (removed.isPresent())
+			return null;
+		return spawnedObjs.stream().filter(m -> m.tile().equals(x, z, level)).findAny().orElse(null);
+	}
+
+	@Benchmark
+	public void syncViewIndexed(Blackhole blackhole) {
+		Area view = view();
+		for (int x = view.x1(); x < view.x2(); x += 8) {
+			for (int z = view.z1(); z < view.z2(); z += 8) {
+				Area chunk = new Area(x, z, x + 7, z + 7);
+				overrides.forEachIn(chunk, true, blackhole::consume);
+				overrides.forEachIn(chunk, false, blackhole::consume);
+			}
+		}
+	}
+
+	@Benchmark
+	public void syncViewLists(Blackhole blackhole) {
+		Area view = view();
+		for (int x = view.x1(); x < view.x2(); x += 8) {
+			for (int z = view.z1(); z < view.z2(); z += 8) {
+				Area chunk = new Area(x, z, x + 7, z + 7);
+				for (MapObj obj : removedObjs) {
+					if (chunk.contains(obj.tile()))
+						blackhole.consume(obj);
+				}
+				for (MapObj obj : spawnedObjs) {
+					if (chunk.contains(obj.tile()))
+						blackhole.consume(obj);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A view to send, in whole chunks like the active area of a player.
+	 */
+	private Area view() {
+		int x = (BASE + random.nextInt(SIDE - 104)) & ~7;
+		int z = (BASE + random.nextInt(SIDE - 104)) & ~7;
+		return new Area(x, z, x + 103, z + 103);
+	}
+
+}
@@ -0,0 +1,127 @@
+package io.nozemi.runescape.model.map.steroids;
+
+import io.nozemi.runescape.model.Tile;
+import it.unimi.dsi.fastutil.objects.Object2ObjectArrayMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the clip flags of a batch of tiles through {@link CollisionMap#clipAt}, against the lookup World.clipAt did
+ * before the flags moved off-heap: a Tile, the map definition of its region out of the definition repository, then the
+ * int[4][64][64] masks of that definition. The old definitions are gone, so their lookup is rebuilt here with the same
+ * map and array shapes. Both hold the same flags for the same regions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollisionMapBenchmark {
+
+	private static final int LOOKUPS = 4096;
+
+	// Tiles all over the loaded regions, as npc and player movement spread over the world, or all within one region
+	// like a route search.
+	@Param({"scattered", "local"})
+	String pattern;
+
+	private CollisionMap collision;
+	private Object2ObjectArrayMap<Class<?>, Object[]> definitions;
+	private int[] loaded;
+	private int[] xs, zs, levels;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(13);
+		collision = new CollisionMap(null);
+
+		// Regions of the mainland, 15 by 25 of them
+		loaded = new int[15 * 25];
+		OldMap[] maps = new OldMap[256 * 256];
+		for (int i = 0; i < loaded.length; i++) {
+			int region = ((36 + i / 25) << 8) | (40 + i % 25);
+			loaded[i] = region;
+			maps[region] = new OldMap();
+
+			for (int level = 0; level < 4; level++) {
+				for (int x = 0; x < 64; x++) {
+					for (int z = 0; z < 64; z++) {
+						int flags = random.nextInt(8) == 0 ? random.nextInt() : 0;
+						maps[region].masks[level][x][z] = flags;
+						collision.set(region, level, x, z, flags);
+					}
+				}
+			}
+		}
+
+		// The repository keeps a definition array per type, maps are one of a handful
+		definitions = new Object2ObjectArrayMap<>();
+		definitions.put(Integer.class, new Object[0]);
+		definitions.put(String.class, new Object[0]);
+		definitions.put(Long.class, new Object[0]);
+		definitions.put(OldMap.class, maps);
+
+		xs = new int[LOOKUPS];
+		zs = new int[LOOKUPS];
+		levels = new int[LOOKUPS];
+		int home = loaded[random.nextInt(loaded.length)];
+		for (int i = 0; i < LOOKUPS; i++) {
+			int region = pattern.equals("local") ? home : loaded[random.nextInt(loaded.length)];
+			xs[i] = ((region >> 8) << 6) | random.nextInt(64);
+			zs[i] = ((region & 0xFF) << 6) | random.nextInt(64);
+			levels[i] = random.nextInt(8) == 0 ? 1 : 0;
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (int region : loaded)
+			collision.clear(region);
+	}
+
+	@Benchmark
+	public int definitionLookup() {
+		int sum = 0;
+		for (int i = 0; i < LOOKUPS; i++)
+			sum += oldClipAt(xs[i], zs[i], levels[i]);
+		return sum;
+	}
+
+	@Benchmark
+	public int collisionMap() {
+		int sum = 0;
+		for (int i = 0; i < LOOKUPS; i++)
+			sum += collision.clipAt(xs[i], zs[i], levels[i]);
+		return sum;
+	}
+
+	/**
+	 * World.clipAt(int, int, int) as it was, through clipAt(Tile) and DefinitionRepository.get.
+	 */
+	private int oldClipAt(int x, int z, int level) {
+		Tile tile = new Tile(x, z, level);
+		Object[] maps = definitions.get(OldMap.class);
+		int region = tile.region();
+		OldMap active = region >= 0 && region < maps.length ? (OldMap) maps[region] : null;
+		return active == null ? 0 : active.masks[tile.level][tile.x & 63][tile.z & 63];
+	}
+
+	private static final class OldMap {
+		private final int[][][] masks = new int[4][64][64];
+	}
+
+}
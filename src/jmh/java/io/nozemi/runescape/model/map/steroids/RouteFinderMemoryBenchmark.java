@@ -0,0 +1,96 @@
+package io.nozemi.runescape.model.map.steroids;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Soaks {@link RouteFinderMemory} with a million acquires and releases per iteration, spread over a few threads that
+ * each keep a number of windows alive at once, as finders held over several ticks do. After every iteration nothing
+ * may be in use, and the native bytes may not have grown past what the idle pool is allowed to keep, so a leak in
+ * either path fails the run instead of showing up as a slowly growing process.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 10)
+@Threads(RouteFinderMemoryBenchmark.THREADS)
+@Fork(1)
+public class RouteFinderMemoryBenchmark {
+
+	static final int THREADS = 4;
+	private static final int CYCLES = 1_000_000 / THREADS;
+
+	// Windows every thread holds at once; past the idle pool size releases have to free
+	@Param({"1", "8", "32"})
+	int held;
+
+	private long baseline;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		baseline = RouteFinderMemory.nativeBytes();
+	}
+
+	@TearDown(Level.Iteration)
+	public void verify() {
+		long inUse = RouteFinderMemory.inUse();
+		long grown = RouteFinderMemory.nativeBytes() - baseline;
+
+		if (inUse != 0)
+			throw new IllegalStateException(inUse + " windows still in use after every finder released its own.");
+		if (grown > RouteFinderMemory.MAX_IDLE * RouteFinderMemory.FLAGS_SIZE)
+			throw new IllegalStateException("Native memory grew by " + grown / 1024 + "KB, more than the idle pool keeps.");
+	}
+
+	@Benchmark
+	public long soak(Finders finders) {
+		ClipWindow[] windows = finders.windows;
+		Random random = finders.random;
+		long checksum = 0;
+
+		for (int i = 0; i < CYCLES; i++) {
+			int slot = i % windows.length;
+			if (windows[slot] != null)
+				RouteFinderMemory.release(windows[slot]);
+
+			// Anywhere in a ten by ten region square around Lumbridge
+			windows[slot] = RouteFinderMemory.acquire(3200 + random.nextInt(640), 3200 + random.nextInt(640), random.nextInt(4));
+			checksum += windows[slot].address;
+		}
+
+		for (int slot = 0; slot < windows.length; slot++) {
+			RouteFinderMemory.release(windows[slot]);
+			windows[slot] = null;
+		}
+		return checksum;
+	}
+
+	@State(Scope.Thread)
+	public static class Finders {
+
+		ClipWindow[] windows;
+		final Random random = new Random();
+
+		@Setup(Level.Trial)
+		public void setup(RouteFinderMemoryBenchmark benchmark) {
+			windows = new ClipWindow[benchmark.held];
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+package io.nozemi.runescape.net.codec.game;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.nozemi.runescape.io.RSBuffer;
+import io.nozemi.runescape.model.entity.Player;
+import io.nozemi.runescape.net.message.game.Command;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes a packet with every payload size, once copying the payload behind the opcode and once composing the opcode
+ * header with the payload, the two paths {@link CommandEncoder} picks between by size. Bytes per second follow from
+ * the payload size and the time per packet.
+ * <p>
+ * Run with {@code -prof gc} to see what each path allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandEncoderBenchmark {
+
+	@Param({"16", "256", "2048", "16384"})
+	int payload;
+
+	@Param({"unpooled", "pooled"})
+	String allocator;
+
+	private EmbeddedChannel channel;
+	private CommandEncoder copying;
+	private CommandEncoder composing;
+	private ChannelHandlerContext copyingContext;
+	private ChannelHandlerContext composingContext;
+	private Command command;
+	private final List<Object> out = new ArrayList<>(1);
+
+	@Setup
+	public void setup() {
+		ByteBufAllocator alloc = allocator.equals("pooled") ? PooledByteBufAllocator.DEFAULT : UnpooledByteBufAllocator.DEFAULT;
+
+		copying = new CommandEncoder(Integer.MAX_VALUE);
+		composing = new CommandEncoder(0);
+		channel = new EmbeddedChannel(copying, composing);
+		channel.config().setAllocator(alloc);
+		copyingContext = channel.pipeline().context(copying);
+		composingContext = channel.pipeline().context(composing);
+
+		byte[] bytes = new byte[payload];
+		new Random(3).nextBytes(bytes);
+		command = new Payload(alloc, bytes);
+	}
+
+	@TearDown
+	public void tearDown() {
+		channel.finishAndReleaseAll();
+	}
+
+	@Benchmark
+	public int copy() throws Exception {
+		return encode(copying, copyingContext);
+	}
+
+	@Benchmark
+	public int compose() throws Exception {
+		return encode(composing, composingContext);
+	}
+
+	private int encode(CommandEncoder encoder, ChannelHandlerContext ctx) throws Exception {
+		encoder.encode(ctx, command, out);
+		int size = out.size();
+		for (int i = 0; i < size; i++)
+			ReferenceCountUtil.release(out.get(i));
+		out.clear();
+		return size;
+	}
+
+	/**
+	 * A whitelisted packet with a fresh buffer holding the payload, like the commands encoded per player.
+	 */
+	private static final class Payload extends Command {
+
+		private final ByteBufAllocator alloc;
+		private final byte[] bytes;
+
+		private Payload(ByteBufAllocator alloc, byte[] bytes) {
+			this.alloc = alloc;
+			this.bytes = bytes;
+		}
+
+		@Override
+		public RSBuffer encode(Player player) {
+			RSBuffer buffer = new RSBuffer(alloc.buffer(bytes.length)).packet(56);
+			buffer.writeBytes(bytes);
+			return buffer;
+		}
+	}
+
+}
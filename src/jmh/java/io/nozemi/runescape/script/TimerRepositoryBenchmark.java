@@ -0,0 +1,86 @@
+package io.nozemi.runescape.script;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick of timers for 30k entities: every {@link TimerRepository} cycled, then its expired timers fired the way the
+ * player and npc fire loops do. A fired timer is registered again for a while, as most timers are, or cancelled for
+ * another one, so the number of timers stays the same from tick to tick. Some timers run for up to an hour, so the
+ * higher levels of the wheel cascade as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimerRepositoryBenchmark {
+
+	private static final int ENTITIES = 30_000;
+
+	// Percentage of entities holding timers, the rest are idle npcs and players
+	@Param({"10", "30", "100"})
+	int active;
+
+	private final Random random = new Random(24);
+	private final TimerKey[] keys = TimerKey.cachedValues;
+	private TimerRepository[] repositories;
+
+	@Setup
+	public void setup() {
+		repositories = new TimerRepository[ENTITIES];
+
+		for (int i = 0; i < ENTITIES; i++) {
+			TimerRepository repository = new TimerRepository();
+			if (random.nextInt(100) < active) {
+				for (int n = 1 + random.nextInt(3); n > 0; n--)
+					repository.register(keys[random.nextInt(keys.length)], ticks());
+			}
+			repositories[i] = repository;
+		}
+	}
+
+	@Benchmark
+	public int tick() {
+		int fired = 0;
+
+		for (TimerRepository repository : repositories) {
+			repository.cycle();
+
+			for (Timer timer : repository.expired()) {
+				fired++;
+				// Keep the number of timers steady, a cancelled one makes way for another
+				if (random.nextInt(4) == 0) {
+					repository.cancel(timer.key());
+					repository.register(keys[random.nextInt(keys.length)], ticks());
+				} else {
+					repository.register(timer.key(), ticks());
+				}
+			}
+		}
+
+		return fired;
+	}
+
+	/**
+	 * Mostly combat and skilling delays of a few ticks, some effects of a minute, a few running for an hour.
+	 */
+	private int ticks() {
+		int roll = random.nextInt(100);
+		return roll < 80 ? 1 + random.nextInt(30) : roll < 98 ? 30 + random.nextInt(1000) : 1000 + random.nextInt(6000);
+	}
+
+}
@@ -0,0 +1,96 @@
+package io.nozemi.runescape.service.login;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thousand players logging in at once through {@link CredentialVerifier}, with BCrypt at cost 6: either fresh logins,
+ * which all hash, or a mass reconnect right after they logged in, which the session tokens serve. An op ends when every
+ * login has its answer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CredentialVerifierBenchmark {
+
+	private static final int LOGINS = 1000;
+
+	@Param({"login", "reconnect"})
+	String kind;
+
+	// Size of the hashing pool, account.hash-threads
+	@Param({"1", "4"})
+	int threads;
+
+	private final BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(6);
+	private final String[] usernames = new String[LOGINS];
+	private final String[] passwords = new String[LOGINS];
+	private final String[] hashes = new String[LOGINS];
+	private final String[] clients = new String[LOGINS];
+
+	private CredentialVerifier verifier;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		for (int i = 0; i < LOGINS; i++) {
+			usernames[i] = "Player " + i;
+			passwords[i] = "hunter" + i * 7919;
+			hashes[i] = encoder.encode(passwords[i]);
+			clients[i] = "client-" + i;
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void start() {
+		verifier = new CredentialVerifier(encoder, threads, TimeUnit.MINUTES.toMillis(5));
+
+		// Everyone reconnecting logged in a moment ago and holds a token
+		if (kind.equals("reconnect"))
+			loginAll(false);
+	}
+
+	@TearDown(Level.Iteration)
+	public void stop() {
+		verifier.shutdown();
+	}
+
+	@Benchmark
+	public int logins() {
+		return loginAll(kind.equals("reconnect"));
+	}
+
+	private int loginAll(boolean reconnect) {
+		@SuppressWarnings("unchecked")
+		CompletableFuture<Boolean>[] results = new CompletableFuture[LOGINS];
+		for (int i = 0; i < LOGINS; i++)
+			results[i] = verifier.verify(usernames[i], passwords[i], hashes[i], clients[i], reconnect);
+
+		int accepted = 0;
+		for (CompletableFuture<Boolean> result : results) {
+			if (result.join())
+				accepted++;
+		}
+		if (accepted != LOGINS)
+			throw new IllegalStateException("Only " + accepted + " of " + LOGINS + " logins were accepted.");
+		return accepted;
+	}
+
+}
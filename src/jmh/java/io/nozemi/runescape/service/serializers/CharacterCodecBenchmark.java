@@ -0,0 +1,125 @@
+package io.nozemi.runescape.service.serializers;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.nozemi.runescape.model.entity.player.Skills;
+import io.nozemi.runescape.model.entity.player.Varps;
+import io.nozemi.runescape.orm.models.Character;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves and loads one played character in memory with {@link CharacterCodec} and with the mapper of the JSON files,
+ * so the numbers are those of the formats and not of the disk. The shipped JSON files leave out skills, varps and
+ * items, so JSON is also measured with a mapper that keeps them, to compare the formats at the same content.
+ * <p>
+ * The size of the saved character in each format is printed once per fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CharacterCodecBenchmark {
+
+	private final ObjectMapper json = JSONFileSerializer.createMapper();
+	private final ObjectMapper jsonFull = JSONFileSerializer.createMapper().configure(MapperFeature.USE_ANNOTATIONS, false);
+
+	private Character character;
+	private byte[] binaryFile, jsonFile, jsonFullFile;
+
+	@Setup
+	public void setup() throws IOException {
+		Random random = new Random(18);
+		character = new Character();
+		character.setId(4512);
+		character.setUserId(3390);
+		character.setUsername("Zezima");
+		character.setPosX(3222);
+		character.setPosY(3218);
+		character.setRunEnergy(87.5);
+		character.setSpecialEnergy(100);
+
+		// Some hundred hours in: mid levels, xp earned in tenths
+		double[] xp = new double[Skills.SKILL_COUNT];
+		int[] levels = new int[Skills.SKILL_COUNT];
+		for (int skill = 0; skill < xp.length; skill++) {
+			xp[skill] = random.nextInt(13_000_000) / 10.0;
+			levels[skill] = 30 + random.nextInt(60);
+		}
+		character.setSkillXp(xp);
+		character.setSkillLevels(levels);
+
+		// Quest progress and settings leave a couple hundred varps set
+		int[] varps = new int[Varps.SIZE];
+		for (int i = 0; i < 200; i++)
+			varps[random.nextInt(varps.length)] = random.nextInt(8) == 0 ? random.nextInt() : random.nextInt(64);
+		character.setVarps(varps);
+
+		character.setInventory(items(random, 28, 20));
+		character.setEquipment(items(random, 14, 11));
+
+		binaryFile = binarySave();
+		jsonFile = jsonSave();
+		jsonFullFile = jsonFullSave();
+		System.out.printf("Saved character: %d bytes binary, %d bytes JSON, %d bytes JSON with everything.%n",
+				binaryFile.length, jsonFile.length, jsonFullFile.length);
+	}
+
+	private static int[] items(Random random, int slots, int used) {
+		int[] packed = new int[slots * 2];
+		for (int slot = 0; slot < slots; slot++) {
+			packed[slot * 2] = slot < used ? random.nextInt(20_000) : -1;
+			packed[slot * 2 + 1] = slot >= used ? 0 : random.nextInt(4) == 0 ? random.nextInt(1_000_000) : 1;
+		}
+		return packed;
+	}
+
+	@Benchmark
+	public byte[] binarySave() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+		CharacterCodec.write(character, out);
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public Character binaryLoad() throws IOException {
+		return CharacterCodec.read(new ByteArrayInputStream(binaryFile));
+	}
+
+	@Benchmark
+	public byte[] jsonSave() throws IOException {
+		return json.writeValueAsBytes(character);
+	}
+
+	@Benchmark
+	public Character jsonLoad() throws IOException {
+		return json.readValue(jsonFile, Character.class);
+	}
+
+	@Benchmark
+	public byte[] jsonFullSave() throws IOException {
+		return jsonFull.writeValueAsBytes(character);
+	}
+
+	@Benchmark
+	public Character jsonFullLoad() throws IOException {
+		return jsonFull.readValue(jsonFullFile, Character.class);
+	}
+
+}
@@ -0,0 +1,173 @@
+package io.nozemi.runescape.task;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.nozemi.runescape.handlers.impl.ConfigHandler;
+import io.nozemi.runescape.io.RSBuffer;
+import io.nozemi.runescape.model.Tile;
+import io.nozemi.runescape.model.World;
+import io.nozemi.runescape.model.entity.Player;
+import io.nozemi.runescape.model.entity.player.Looks;
+import io.nozemi.runescape.net.message.game.Command;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick of player updating for a world of players walking around a crowded square: the sync jobs
+ * {@link PlayerSyncTask} creates, run back to back on one thread, followed by the post sync reset. Every player writes
+ * to an embedded channel that releases the packets, so the packet buffers come from the configured allocator.
+ * <p>
+ * Looks blocks are set directly and players never walk out of their map, as encoding looks and map packets takes the
+ * cache. Run with {@code -prof gc} for the allocation rate; gc.alloc.rate.norm is the garbage of a tick.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SyncPacketBenchmark {
+
+	// Client step directions, by step id
+	private static final int[] STEP_X = {-1, 0, 1, -1, 1, -1, 0, 1};
+	private static final int[] STEP_Z = {-1, -1, -1, 0, 0, 1, 1, 1};
+
+	@Param({"2000"})
+	int players;
+
+	// Side of the square everyone stands in
+	@Param({"48", "128"})
+	int spread;
+
+	@Param({"unpooled", "pooled"})
+	String allocator;
+
+	private final PlayerSyncTask sync = new PlayerSyncTask();
+	private final PlayerPostSyncTask postSync = new PlayerPostSyncTask();
+	private final Random random = new Random(56);
+
+	private World world;
+	private Player[] online;
+	private EmbeddedChannel channel;
+	private long written;
+
+	@Setup
+	public void setup() throws Exception {
+		channel = new EmbeddedChannel(new Sink());
+		channel.config().setAllocator(allocator.equals("pooled") ? PooledByteBufAllocator.DEFAULT : UnpooledByteBufAllocator.DEFAULT);
+
+		world = new World(null, new FixedConfig(ConfigFactory.parseString("server.realm = ECO")));
+
+		Field calculated = Looks.class.getDeclaredField("calculated");
+		calculated.setAccessible(true);
+
+		online = new Player[players];
+		for (int i = 0; i < players; i++) {
+			Player player = new Player(world).username("player" + i).channel(channel);
+			player.tile(new Tile(3200 + random.nextInt(spread), 3200 + random.nextInt(spread)));
+			player.index(world.players().add(player));
+			player.activeMap(new Tile(player.tile().x - 52, player.tile().z - 52));
+			player.updateRemoteLocation();
+
+			byte[] looks = new byte[50 + random.nextInt(20)];
+			random.nextBytes(looks);
+			calculated.set(player.looks(), looks);
+			player.sync().calculateLooks();
+			online[i] = player;
+		}
+
+		// The first tick adds everyone to everyone, measure the ticks after
+		tick();
+	}
+
+	@TearDown
+	public void tearDown() {
+		channel.finishAndReleaseAll();
+	}
+
+	@Benchmark
+	public long tick() {
+		written = 0;
+
+		for (Player player : online) {
+			int roll = random.nextInt(10);
+			if (roll < 3)
+				walk(player);
+			else if (roll == 3)
+				player.sync().animation(808 + random.nextInt(4), 0);
+		}
+
+		for (SubTask job : sync.createJobs(world))
+			job.execute();
+		for (Player player : online)
+			postSync.process(player);
+
+		return written;
+	}
+
+	private void walk(Player player) {
+		Tile tile = player.tile();
+		int step = random.nextInt(8);
+		int x = tile.x + STEP_X[step];
+		int z = tile.z + STEP_Z[step];
+		if (x < 3200 || z < 3200 || x >= 3200 + spread || z >= 3200 + spread)
+			return;
+
+		// Stay well inside the map the player was given, the map packets need the cache
+		Tile map = player.activeMap();
+		if (x - map.x < 24 || z - map.z < 24 || x - map.x >= 80 || z - map.z >= 80)
+			return;
+
+		player.tile(new Tile(x, z));
+		player.sync().step(step, -1);
+	}
+
+	/**
+	 * Counts and releases whatever the players write.
+	 */
+	private final class Sink extends ChannelOutboundHandlerAdapter {
+
+		@Override
+		public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+			RSBuffer buffer = ((Command) msg).write(null);
+			written += buffer.get().readableBytes();
+			buffer.get().release();
+			promise.setSuccess();
+		}
+	}
+
+	private static final class FixedConfig extends ConfigHandler {
+
+		private final Config config;
+
+		private FixedConfig(Config config) {
+			this.config = config;
+		}
+
+		@Override
+		public Config config() {
+			return config;
+		}
+	}
+
+}
@@ -2,9 +2,16 @@ package io.nozemi.runescape;
 
 import com.typesafe.config.Config;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.nozemi.runescape.handlers.Handler;
@@ -90,8 +97,11 @@ public class GameInitializer implements InitializingBean, BeanFactoryAware {
         testServer = !config.hasPath("server.test") || config.getBoolean("server.test");
         devServer = !config.hasPath("server.dev") || config.getBoolean("server.dev");
 
-        EventLoopGroup acceptGroup = new NioEventLoopGroup(config.getInt("net.acceptthreads"));
-        EventLoopGroup ioGroup = new NioEventLoopGroup(config.getInt("net.iothreads"));
+        int acceptThreads = config.getInt("net.acceptthreads");
+        boolean epoll = useEpoll();
+
+        EventLoopGroup acceptGroup = epoll ? new EpollEventLoopGroup(acceptThreads) : new NioEventLoopGroup(acceptThreads);
+        EventLoopGroup ioGroup = epoll ? new EpollEventLoopGroup(config.getInt("net.iothreads")) : new NioEventLoopGroup(config.getInt("net.iothreads"));
 
         clientInitializer = beanFactory.getBean(ClientInitializer.class);
 
@@ -99,13 +109,28 @@ public class GameInitializer implements InitializingBean, BeanFactoryAware {
 
         bootstrap = new ServerBootstrap();
         bootstrap.group(acceptGroup, ioGroup);
-        bootstrap.channel(NioServerSocketChannel.class);
+        bootstrap.channel(epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class);
         bootstrap.childHandler(clientInitializer);
         bootstrap.childOption(ChannelOption.CONNECT_TIMEOUT_MILLIS, 30_000);
         bootstrap.childOption(ChannelOption.TCP_NODELAY, true);
         bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
-        bootstrap.option(ChannelOption.ALLOCATOR, new UnpooledByteBufAllocator(false));
-        bootstrap.childOption(ChannelOption.ALLOCATOR, new UnpooledByteBufAllocator(false));
+        ByteBufAllocator allocator = allocator();
+        bootstrap.option(ChannelOption.ALLOCATOR, allocator);
+        bootstrap.childOption(ChannelOption.ALLOCATOR, allocator);
+
+        // With SO_REUSEPORT every accept loop binds its own listening socket, and the kernel spreads connections over them.
+        int binds = 1;
+        if (epoll) {
+            EpollMode mode = !config.hasPath("net.epoll.edgetriggered") || config.getBoolean("net.epoll.edgetriggered")
+                    ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, mode);
+            bootstrap.childOption(EpollChannelOption.EPOLL_MODE, mode);
+
+            if (config.hasPath("net.epoll.reuseport") && config.getBoolean("net.epoll.reuseport")) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+                binds = acceptThreads;
+            }
+        }
 
         System.gc();
 
@@ -113,7 +138,49 @@ public class GameInitializer implements InitializingBean, BeanFactoryAware {
                 config.getString("net.address"), config.getInt("net.port"),
                 world.realm().name(), testServer ? " in testing mode... " : ""
         );
-        bootstrap.bind(config.getString("net.address"), config.getInt("net.port")).sync().awaitUninterruptibly();
+        for (int i = 0; i < binds; i++) {
+            bootstrap.bind(config.getString("net.address"), config.getInt("net.port")).sync().awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Whether to use the native epoll transport, as selected by <code>net.transport</code> (<code>nio</code> or
+     * <code>epoll</code>, defaulting to nio). Falls back to nio when epoll is not available on this host.
+     */
+    private boolean useEpoll() {
+        String transport = config.hasPath("net.transport") ? config.getString("net.transport") : "nio";
+
+        switch (transport) {
+            case "nio":
+                return false;
+            case "epoll":
+                if (!Epoll.isAvailable()) {
+                    logger.warn("Epoll transport is unavailable, falling back to nio.", Epoll.unavailabilityCause());
+                    return false;
+                }
+                logger.info("Using the native epoll transport.");
+                return true;
+            default:
+                throw new RuntimeException("Unknown net.transport '" + transport + "', expected nio or epoll.");
+        }
+    }
+
+    /**
+     * Picks the buffer allocator from <code>net.allocator</code>: <code>pooled</code> for pooled direct buffers, or
+     * <code>unpooled</code> (the default) for unpooled heap buffers.
+     */
+    private ByteBufAllocator allocator() {
+        String type = config.hasPath("net.allocator") ? config.getString("net.allocator") : "unpooled";
+
+        switch (type) {
+            case "pooled":
+                logger.info("Using pooled direct buffers.");
+                return new PooledByteBufAllocator(true);
+            case "unpooled":
+                return new UnpooledByteBufAllocator(false);
+            default:
+                throw new RuntimeException("Unknown net.allocator '" + type + "', expected pooled or unpooled.");
+        }
     }
 
     @Override
@@ -1,23 +1,22 @@
 package io.nozemi.runescape;
 
+import com.typesafe.config.Config;
 import io.netty.handler.traffic.TrafficCounter;
+import io.nozemi.runescape.handlers.impl.ServiceHandler;
 import io.nozemi.runescape.model.World;
+import io.nozemi.runescape.model.map.steroids.RouteFinderMemory;
+import io.nozemi.runescape.net.codec.game.CommandEncoder;
+import io.nozemi.runescape.service.login.LoginService;
+import io.nozemi.runescape.service.serializers.SpringSerializer;
 import io.nozemi.runescape.task.*;
 import io.nozemi.runescape.tasksystem.TaskManager;
-import it.unimi.dsi.fastutil.objects.Object2IntArrayMap;
-import it.unimi.dsi.fastutil.objects.Object2LongArrayMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class ServerProcessor extends Thread {
@@ -26,20 +25,22 @@ public class ServerProcessor extends Thread {
 
     private World world;
 
-    private List<Task> tasks = new LinkedList<>();
+    private PhaseScheduler scheduler = new PhaseScheduler();
+
+    private TickClock clock;
 
     private boolean running = true;
 
     private int infotick = 10;
 
-    private ExecutorService taskExecutor;
-
     private ConcurrentLinkedQueue<Runnable> logicJobs;
 
     public static boolean forceLog;
 
-    public static Object2IntArrayMap<Class> times = new Object2IntArrayMap<>();
-    public static Object2LongArrayMap<String> computeTimes = new Object2LongArrayMap<>();
+    /**
+     * The length of a game cycle, in milliseconds.
+     */
+    public static final int CYCLE_TIME = 600;
 
     private final PacketProcessingTask packetProcessingTask;
 
@@ -50,25 +51,31 @@ public class ServerProcessor extends Thread {
         this.logicJobs = new ConcurrentLinkedQueue<>();
 
         this.world = world;
-        this.taskExecutor = Executors.newWorkStealingPool();
 
         this.packetProcessingTask = packetProcessingTask;
     }
 
     public void initialize() {
-        tasks.add(packetProcessingTask);
-        tasks.add(new ScriptProcessingTask());
-        tasks.add(new PlayerProcessingTask());
-        tasks.add(new NpcProcessingTask());
-
-        tasks.add(new PlayerPreSyncTask());
-        tasks.add(new NpcViewportTask());
-        tasks.add(new PlayerSyncTask());
-        tasks.add(new NpcSyncTask());
-        tasks.add(new PlayerPostSyncTask());
-        tasks.add(new NpcPostSyncTask());
-
-        tasks.add(new NetworkFlushTask());
+        Config config = GameInitializer.config();
+        TickClock.OverrunPolicy overrunPolicy = config.hasPath("server.tick.overrun")
+                ? TickClock.OverrunPolicy.valueOf(config.getString("server.tick.overrun").trim().toUpperCase().replace('-', '_'))
+                : TickClock.OverrunPolicy.SKIP;
+        clock = new TickClock(CYCLE_TIME, TimeUnit.MILLISECONDS, overrunPolicy);
+
+        scheduler.register(packetProcessingTask);
+        scheduler.register(new ScriptProcessingTask());
+        scheduler.register(new PlayerProcessingTask());
+        scheduler.register(new NpcProcessingTask());
+
+        scheduler.register(new PlayerPreSyncTask());
+        scheduler.register(new ChunkUpdateTask());
+        scheduler.register(new NpcViewportTask());
+        scheduler.register(new PlayerSyncTask());
+        scheduler.register(new NpcSyncTask());
+        scheduler.register(new PlayerPostSyncTask());
+        scheduler.register(new NpcPostSyncTask());
+
+        scheduler.register(new NetworkFlushTask());
 
         start();
     }
@@ -79,14 +86,15 @@ public class ServerProcessor extends Thread {
 
     @Override
     public void run() {
+        clock.start();
+
         while (running) {
             process();
+            clock.awaitNextTick();
         }
     }
-    private void process() {
-        computeTimes.clear();
-        long start = System.currentTimeMillis();
 
+    private void process() {
         // Execute logic jobs
         logicJobs.forEach((runnable) -> {
             try {
@@ -97,25 +105,11 @@ public class ServerProcessor extends Thread {
         });
         logicJobs.clear();
 
-        times.clear();
-        for (Task t : tasks) {
-            long l = System.currentTimeMillis();
-            try {
-                if (t.isAsyncSafe()) { // Is this job distributable across multiple workers?
-                    Collection<SubTask> jobs = t.createJobs(world);
-                    List<Future<Object>> futures = taskExecutor.invokeAll(jobs);
-                } else { // Simple non-thread safe job that must execute all by itself.
-                    t.execute(world);
-                }
-            } catch (Throwable throwable) {
-                logger.error("An exception occurred when executing " + t.getClass().getSimpleName() + ".", throwable);
-            }
-            times.put(t.getClass(), (int) (System.currentTimeMillis() - l));
-        }
+        scheduler.run(world);
 
-        TaskManager.cyclePlayerChains();
+        TaskManager.cycle();
 
-        long delay = 600 - (System.currentTimeMillis() - start);
+        long elapsed = clock.elapsed();
 
         if (infotick-- == 0) {
             infotick = 30;
@@ -125,32 +119,54 @@ public class ServerProcessor extends Thread {
             long maxMem = Runtime.getRuntime().maxMemory();
             TrafficCounter traffic = GameInitializer.clientInitializer().trafficStats();
             if (traffic != null && GameInitializer.isDevServer())
-                logger.info("Cycle time: {}ms, players: {}, npcs: {}. Memory usage: {}MB/{}MB. Reserved: {}MB. Rx: {}KB/s, Tx: {}KB/s.",
-                        System.currentTimeMillis() - start, world.players().size(), world.npcs().size(), (totalMem - freeMem) / 1024 / 1024,
-                        totalMem / 1024 / 1024, maxMem / 1024 / 1024, traffic.lastReadThroughput() / 1024, traffic.lastWriteThroughput() / 1024);
+                logger.info("Cycle time: {}ms, {}, players: {}, npcs: {}. Memory usage: {}MB/{}MB. Reserved: {}MB. Rx: {}KB/s, Tx: {}KB/s. Encoded: {}.",
+                        elapsed, clock.summary(), world.players().size(), world.npcs().size(), (totalMem - freeMem) / 1024 / 1024,
+                        totalMem / 1024 / 1024, maxMem / 1024 / 1024, traffic.lastReadThroughput() / 1024, traffic.lastWriteThroughput() / 1024,
+                        CommandEncoder.throughput());
+            if (GameInitializer.isDevServer()) {
+                logger.info(RouteFinderMemory.summary());
+                logger.info(world.definitions().summary());
+                logger.info(world.groundItemSummary());
+                logger.info(world.chunkUpdateSummary());
+                logger.info(TaskManager.summary());
+                logger.info(LoginService.serializer().saveSummary());
+                GameInitializer.handler(ServiceHandler.class)
+                        .flatMap(handler -> handler.<LoginService>service(LoginService.class, false))
+                        .ifPresent(loginService -> logger.info(loginService.summary()));
+                if (LoginService.serializer() instanceof SpringSerializer && ((SpringSerializer) LoginService.serializer()).credentialSummary() != null)
+                    logger.info(((SpringSerializer) LoginService.serializer()).credentialSummary());
+            }
         }
 
         if (forceLog) {
-            logger.error(times);
-            logger.error(computeTimes);
+            logger.error(scheduler.timings());
             //logger.error(GameInitializer.scriptRepository().getTimerProfiler());
             forceLog = false;
         }
 
-        if (delay < 0) {
-            logger.error("Server cannot keep up! Cycle overdue: {}ms.", -delay);
-            logger.error(times);
-            logger.error(computeTimes);
-        } else {
-            try {
-                Thread.sleep(delay); // TODO: Look into how to replace Quasar's Strand
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        if (elapsed > CYCLE_TIME) {
+            logger.error("Server cannot keep up! Cycle overdue: {}ms.", elapsed - CYCLE_TIME);
+            logger.error(scheduler.timings());
+            logger.error(clock.summary());
         }
     }
 
+    /**
+     * @return the scheduler running the cycle phases, which also holds the timings of the last cycle.
+     */
+    public PhaseScheduler scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return the clock driving the cycles, which also holds the tick lateness statistics.
+     */
+    public TickClock clock() {
+        return clock;
+    }
+
     public void terminate() {
         running = false;
+        scheduler.shutdown();
     }
 }
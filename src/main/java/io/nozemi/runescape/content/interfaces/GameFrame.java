@@ -8,7 +8,6 @@ import io.nozemi.runescape.model.Tile;
 import io.nozemi.runescape.model.entity.PathQueue;
 import io.nozemi.runescape.model.entity.Player;
 import io.nozemi.runescape.tasksystem.InterruptibleTask;
-import io.nozemi.runescape.tasksystem.TaskManager;
 import io.nozemi.runescape.util.Varp;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
@@ -45,6 +44,6 @@ public class GameFrame extends ButtonRegisterer {
         }).onComplete(() -> player.message("You arrived!"))
             .onCancel(() -> player.stopActions(true))
             .completeCondition(() -> player.tile().distance(destination) <= 1)
-            .submit(TaskManager.playerChains());
+            .submit();
     }
 }
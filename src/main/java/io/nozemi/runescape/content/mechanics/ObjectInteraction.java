@@ -35,6 +35,6 @@ public class ObjectInteraction {
             player.faceObj(obj);
         }).onCancel(() -> player.stopActions(true))
             .completeCondition(() -> player.tile().distance(obj.tile()) <= 1)
-            .submit(TaskManager.playerChains());*/
+            .submit();*/
     }
 }
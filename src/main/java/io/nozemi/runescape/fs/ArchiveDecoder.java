@@ -0,0 +1,61 @@
+package io.nozemi.runescape.fs;
+
+import nl.bartpelle.dawnguard.util.Compression;
+import nl.bartpelle.dawnguard.util.XTEA;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decodes raw archives the way {@link Compression#decompressArchive(byte[], int...)} does, but without its global
+ * locks: gzip archives are inflated with a fresh stream per call, so many threads can decode at once. Other compression
+ * types are rare in the map index and are handed to the library.
+ */
+final class ArchiveDecoder {
+
+	private static final int HEADER = 9; // Compression type, compressed and decompressed length
+	private static final int MAX_SIZE = 15_000_000;
+
+	private ArchiveDecoder() {
+	}
+
+	/**
+	 * @param raw  the archive as stored, which is deciphered in place.
+	 * @param keys the XTEA keys, or null if the archive is not encrypted.
+	 * @return the decompressed archive, or null if there is none.
+	 */
+	static byte[] decode(byte[] raw, int[] keys) {
+		if (raw == null || raw.length == 0)
+			return null;
+
+		ByteBuffer buffer = ByteBuffer.wrap(raw);
+		if (keys != null && keys.length == 4)
+			XTEA.decipher(buffer, keys);
+
+		int compression = raw[0] & 0xFF;
+		if (compression != 2) {
+			// The library's bzip2 decompressor keeps its state in statics
+			synchronized (ArchiveDecoder.class) {
+				return Compression.decompressArchive(raw, (int[]) null);
+			}
+		}
+
+		int length = buffer.getInt(1);
+		int decompressed = buffer.getInt(5);
+		if (length < 0 || length > MAX_SIZE || decompressed < 0 || decompressed > MAX_SIZE)
+			throw new RuntimeException("Error while parsing archive header: invalid size");
+
+		byte[] data = new byte[decompressed];
+		try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(raw, HEADER, length)))) {
+			in.readFully(data);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return data;
+	}
+
+}
@@ -0,0 +1,255 @@
+package io.nozemi.runescape.fs;
+
+import io.nozemi.runescape.model.Tile;
+import io.nozemi.runescape.model.map.MapObj;
+import io.nozemi.runescape.model.map.steroids.CollisionMap;
+import io.nozemi.runescape.util.map.MapDecryptionKeys;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import nl.bartpelle.dawnguard.DataStore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The decoded result of loading every map: floor flags, static object placements and clip flags, written to disk so
+ * later starts can skip decoding the map archives. A snapshot is only used when the map and config index checksums,
+ * the map keys and the byte order match those it was written with.
+ * <p>
+ * Layout: a header, then per map its region, floors and objects, then the regions holding clip flags. The clip flags
+ * follow at a page aligned offset, {@link CollisionMap#REGION_BYTES} per region in the collision map's own layout, so
+ * they are mapped straight into the collision map instead of being read. The mapping is private: clipping changes
+ * at runtime stay in memory and never reach the file.
+ */
+public class CollisionSnapshot {
+
+	private static final Logger logger = LogManager.getLogger(CollisionSnapshot.class);
+
+	private static final int MAGIC = 0x434C534E;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 40;
+	private static final int FLOOR_BYTES = 4 * 64 * 64;
+	private static final int OBJECT_BYTES = 8;
+	private static final int PAGE = 4096;
+
+	private final Path file;
+	private final int configCrc;
+	private final int mapCrc;
+	private final int keysHash;
+
+	public CollisionSnapshot(Path file, DataStore store) {
+		this.file = file;
+		this.configCrc = store.getIndex(2).getCRC();
+		this.mapCrc = store.getIndex(5).getCRC();
+		this.keysHash = MapDecryptionKeys.hash();
+	}
+
+	/**
+	 * Fills the maps and collision flags from the snapshot.
+	 *
+	 * @return false if there is no usable snapshot, in which case nothing was changed.
+	 */
+	public boolean restore(MapDefinition[] maps, CollisionMap collision) {
+		if (!Files.exists(file))
+			return false;
+
+		long start = System.currentTimeMillis();
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			if (channel.size() < HEADER_BYTES)
+				return false;
+			buffer = channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size());
+		} catch (IOException e) {
+			logger.error("Failed to map the collision snapshot {}.", file, e);
+			return false;
+		}
+
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != configCrc || buffer.getInt() != mapCrc
+				|| buffer.getInt() != keysHash || buffer.getInt() != byteOrder()) {
+			logger.info("Collision snapshot {} is out of date, decoding maps.", file);
+			return false;
+		}
+
+		int definitions = buffer.getInt();
+		int blocks = buffer.getInt();
+		long blocksOffset = buffer.getLong();
+		if (blocksOffset + (long) blocks * CollisionMap.REGION_BYTES != buffer.capacity()) {
+			logger.warn("Collision snapshot {} is truncated, decoding maps.", file);
+			return false;
+		}
+
+		try {
+			for (int i = 0; i < definitions; i++) {
+				int region = buffer.getShort() & 0xFFFF;
+				MapDefinition def = new MapDefinition(region >> 8, region & 0xFF, collision);
+				readFloors(buffer, def.getFloors());
+				readObjects(buffer, def.getObjs(), region, buffer.getInt());
+				maps[region] = def;
+			}
+
+			int[] regions = new int[blocks];
+			long[] offsets = new long[blocks];
+			for (int i = 0; i < blocks; i++) {
+				regions[i] = buffer.getShort() & 0xFFFF;
+				offsets[i] = blocksOffset + (long) i * CollisionMap.REGION_BYTES;
+			}
+			collision.map(buffer, regions, offsets);
+
+			logger.info("Restored {} maps and {} collision regions from {} in {}ms.", definitions, blocks, file,
+					System.currentTimeMillis() - start);
+			return true;
+		} catch (RuntimeException e) {
+			logger.error("Failed to read the collision snapshot {}, decoding maps.", file, e);
+			Arrays.fill(maps, null);
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the loaded maps and collision flags to the snapshot, replacing the file only once complete.
+	 */
+	public void save(MapDefinition[] maps, CollisionMap collision) {
+		long start = System.currentTimeMillis();
+		IntArrayList definitions = new IntArrayList();
+		IntArrayList blocks = new IntArrayList();
+		byte[] block = new byte[CollisionMap.REGION_BYTES];
+		long size = HEADER_BYTES;
+
+		for (int region = 0; region < maps.length; region++) {
+			if (maps[region] != null) {
+				definitions.add(region);
+				size += Short.BYTES + FLOOR_BYTES + Integer.BYTES + (long) OBJECT_BYTES * objectCount(maps[region].getObjs());
+			}
+			if (collision.export(region, block))
+				blocks.add(region);
+		}
+
+		size += (long) Short.BYTES * blocks.size();
+		long blocksOffset = (size + PAGE - 1) / PAGE * PAGE;
+
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(configCrc);
+				out.writeInt(mapCrc);
+				out.writeInt(keysHash);
+				out.writeInt(byteOrder());
+				out.writeInt(definitions.size());
+				out.writeInt(blocks.size());
+				out.writeLong(blocksOffset);
+
+				for (int i = 0; i < definitions.size(); i++) {
+					int region = definitions.getInt(i);
+					out.writeShort(region);
+					writeFloors(out, maps[region].getFloors());
+					writeObjects(out, maps[region].getObjs());
+				}
+
+				for (int i = 0; i < blocks.size(); i++) {
+					out.writeShort(blocks.getInt(i));
+				}
+
+				for (long pad = size; pad < blocksOffset; pad++) {
+					out.write(0);
+				}
+
+				for (int i = 0; i < blocks.size(); i++) {
+					collision.export(blocks.getInt(i), block);
+					out.write(block);
+				}
+			}
+
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			logger.info("Wrote collision snapshot {} ({}KB) in {}ms.", file, Files.size(file) / 1024,
+					System.currentTimeMillis() - start);
+		} catch (IOException e) {
+			logger.error("Failed to write the collision snapshot {}.", file, e);
+		}
+	}
+
+	private static void readFloors(MappedByteBuffer buffer, byte[][][] floors) {
+		for (int level = 0; level < 4; level++) {
+			for (int x = 0; x < 64; x++) {
+				buffer.get(floors[level][x]);
+			}
+		}
+	}
+
+	private static void writeFloors(DataOutputStream out, byte[][][] floors) throws IOException {
+		for (int level = 0; level < 4; level++) {
+			for (int x = 0; x < 64; x++) {
+				out.write(floors[level][x]);
+			}
+		}
+	}
+
+	private static void readObjects(MappedByteBuffer buffer, ObjectArrayList<MapObj>[][][] objs, int region, int count) {
+		int baseX = (region >> 8) << 6;
+		int baseZ = (region & 0xFF) << 6;
+
+		for (int i = 0; i < count; i++) {
+			int id = buffer.getInt();
+			int level = buffer.get();
+			int x = buffer.get();
+			int z = buffer.get();
+			int settings = buffer.get() & 0xFF;
+
+			if (objs[level][x][z] == null)
+				objs[level][x][z] = new ObjectArrayList<>(1);
+			objs[level][x][z].add(new MapObj(new Tile(baseX + x, baseZ + z, level), id, settings >> 2, settings & 3));
+		}
+	}
+
+	private static void writeObjects(DataOutputStream out, ObjectArrayList<MapObj>[][][] objs) throws IOException {
+		out.writeInt(objectCount(objs));
+
+		for (int level = 0; level < 4; level++) {
+			for (int x = 0; x < 64; x++) {
+				for (int z = 0; z < 64; z++) {
+					if (objs[level][x][z] == null)
+						continue;
+
+					for (MapObj obj : objs[level][x][z]) {
+						out.writeInt(obj.id());
+						out.writeByte(level);
+						out.writeByte(x);
+						out.writeByte(z);
+						out.writeByte((obj.type() << 2) | obj.rot());
+					}
+				}
+			}
+		}
+	}
+
+	private static int objectCount(ObjectArrayList<MapObj>[][][] objs) {
+		int count = 0;
+		for (ObjectArrayList<MapObj>[][] level : objs) {
+			for (ObjectArrayList<MapObj>[] column : level) {
+				for (ObjectArrayList<MapObj> tile : column) {
+					if (tile != null)
+						count += tile.size();
+				}
+			}
+		}
+		return count;
+	}
+
+	// The clip flags are stored as they are in memory, so a snapshot only fits machines of the same byte order
+	private static int byteOrder() {
+		return ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0;
+	}
+
+}
@@ -5,15 +5,29 @@ import io.nozemi.runescape.GameInitializer;
 import io.nozemi.runescape.handlers.Handler;
 import io.nozemi.runescape.handlers.impl.ConfigHandler;
 import io.nozemi.runescape.handlers.impl.DataHandler;
+import io.nozemi.runescape.model.map.steroids.CollisionMap;
 import io.nozemi.runescape.util.map.MapDecryptionKeys;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.objects.Object2ObjectArrayMap;
+import nl.bartpelle.dawnguard.Container;
 import nl.bartpelle.dawnguard.DataStore;
+import nl.bartpelle.dawnguard.IndexTable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
 
 /**
  * Created by Bart on 7/11/2015.
@@ -25,6 +39,25 @@ public class DefinitionRepository {
 	
 	private Object2ObjectArrayMap<Class<? extends Definition>, Definition[]> definitionMaps = new Object2ObjectArrayMap<>();
 	private DataStore store;
+	private CollisionMap collision;
+	private Path snapshotFile;
+	private int threads;
+	
+	// Misses load under this lock, so racing callers decode a definition only once and the store sees one reader.
+	private final Object loadLock = new Object();
+	private final Map<Class<?>, CacheStats> stats = new ConcurrentHashMap<>();
+	
+	// Maps still loading, only visible to the loading thread, for neighbours that clip into them.
+	private final MapDefinition[] pendingMaps = new MapDefinition[256 * 256];
+	// Maps whose objects were clipped once; their flags stay in the collision map when the definition is evicted.
+	private final boolean[] clippedMaps = new boolean[256 * 256];
+	
+	// Least recently used eviction of maps loaded from the store, when more than maxResidentMaps are loaded lazily.
+	private int maxResidentMaps;
+	private final IntArrayList residentMaps = new IntArrayList();
+	private final long[] mapAccess = new long[256 * 256];
+	private long accessClock;
+	private long evictions;
 
 	@Autowired
 	public DefinitionRepository(List<Handler> handlers) {
@@ -49,111 +82,145 @@ public class DefinitionRepository {
 		}
 
 		boolean lazy = config.hasPath("definitions.lazy") && config.getBoolean("definitions.lazy");
+		threads = config.hasPath("definitions.threads") ? config.getInt("definitions.threads") : Runtime.getRuntime().availableProcessors();
+		maxResidentMaps = lazy && config.hasPath("definitions.maps.resident") ? config.getInt("definitions.maps.resident") : 0;
+		snapshotFile = Paths.get(config.hasPath("definitions.snapshot") ? config.getString("definitions.snapshot") : "data/collision.snapshot");
 		
+		// With lazy definitions, reading the clip flags of a region is what loads it.
+		collision = new CollisionMap(lazy ? region -> get(MapDefinition.class, region) : null);
 		load(store, lazy);
 	}
 	
 	public void load(DataStore store, boolean lazy) {
-		// Load items
-		int numItems = store.getIndex(2).getDescriptor().getLastFileId(10);
-		ItemDefinition[] items = new ItemDefinition[numItems];
-		definitionMaps.put(ItemDefinition.class, items);
+		// Full loads decode in parallel. Archives are still read one at a time, the store is not thread safe.
+		ForkJoinPool pool = lazy ? null : new ForkJoinPool(threads);
 		
-		if (!lazy) {
-			for (int id = 0; id < numItems; id++) {
-				items[id] = loadDefinition(ItemDefinition.class, id);
+		try {
+			// Load items
+			int numItems = loadAll(pool, ItemDefinition.class, 10, ItemDefinition[]::new, ItemDefinition::new).length;
+			
+			// Load npcs
+			int numNpcs = loadAll(pool, NpcDefinition.class, 9, NpcDefinition[]::new, NpcDefinition::new).length;
+			
+			// Load objects
+			int numObjects = loadAll(pool, ObjectDefinition.class, 6, ObjectDefinition[]::new, ObjectDefinition::new).length;
+			
+			// Load maps
+			int maxMaps = 256 * 256;
+			MapDefinition[] maps = new MapDefinition[maxMaps];
+			definitionMaps.put(MapDefinition.class, maps);
+			
+			// This definition is a bit... hacky. It's to avoid recursive dependencies.
+			CollisionSnapshot snapshot = lazy ? null : new CollisionSnapshot(snapshotFile, store);
+			if (!lazy && !snapshot.restore(maps, collision)) {
+				loadMaps(pool, maps);
+				snapshot.save(maps, collision);
 			}
-		}
-		
-		// Load npcs
-		int numNpcs = store.getIndex(2).getDescriptor().getLastFileId(9);
-		NpcDefinition[] npcs = new NpcDefinition[numNpcs];
-		definitionMaps.put(NpcDefinition.class, npcs);
+			
+			// Load varbits
+			int numVarbits = loadAll(pool, VarbitDefinition.class, 14, VarbitDefinition[]::new, VarbitDefinition::new).length;
+			
+			// Load enums
+			int numEnums = loadAll(pool, EnumDefinition.class, 8, EnumDefinition[]::new, EnumDefinition::new).length;
+			
+			int spotAnimCount = store.getIndex(2).getDescriptor().getLastFileId(13);
 		
-		if (!lazy) {
-			for (int id = 0; id < numNpcs; id++) {
-				npcs[id] = loadDefinition(NpcDefinition.class, id);
-			}
+			logger.info("Loaded {} item definitions.", numItems);
+			logger.info("Loaded {} npc definitions.", numNpcs);
+			logger.info("Loaded {} object definitions.", numObjects);
+			logger.info("Loaded {} varbit definitions.", numVarbits);
+			logger.info("Loaded {} enum definitions.", numEnums);
+			logger.info("Loaded {} spotanim definitions.", spotAnimCount);
+		} finally {
+			if (pool != null)
+				pool.shutdown();
 		}
+	}
+	
+	/**
+	 * Creates the array for all definitions in the archive of the config index. Unless lazy, every definition is
+	 * decoded right away: the files are read in order and decoded in parallel.
+	 */
+	private <T extends Definition> T[] loadAll(ForkJoinPool pool, Class<T> type, int archive, IntFunction<T[]> array, Decoder<T> decoder) {
+		int count = store.getIndex(2).getDescriptor().getLastFileId(archive);
+		T[] definitions = array.apply(count);
+		definitionMaps.put(type, definitions);
 		
-		// Load objects
-		int numObjects = store.getIndex(2).getDescriptor().getLastFileId(6);
-		ObjectDefinition[] objects = new ObjectDefinition[numObjects];
-		definitionMaps.put(ObjectDefinition.class, objects);
-		
-		if (!lazy) {
-			for (int id = 0; id < numObjects; id++) {
-				objects[id] = loadDefinition(ObjectDefinition.class, id);
+		if (pool != null) {
+			long start = System.currentTimeMillis();
+			Container container = store.getIndex(2).getContainer(archive);
+			byte[][] data = new byte[count][];
+			for (int id = 0; id < count; id++) {
+				data[id] = container.getFileData(id, true, true);
 			}
+			
+			long read = System.currentTimeMillis();
+			pool.submit(() -> IntStream.range(0, count).parallel().forEach(id -> definitions[id] = decoder.decode(id, data[id]))).join();
+			logger.info("Decoded {} {}s in {}ms ({}ms reading).", count, type.getSimpleName(), System.currentTimeMillis() - start, read - start);
 		}
 		
-		// Load maps
-		int maxMaps = 256 * 256;
-		MapDefinition[] maps = new MapDefinition[maxMaps];
-		definitionMaps.put(MapDefinition.class, maps);
+		return definitions;
+	}
+	
+	/**
+	 * Loads every map in the store. The archives are read in order, then decoded and clipped in parallel. Objects near
+	 * the edge of a map also clip the neighbouring maps, so the maps are processed in nine waves by their coordinates
+	 * modulo 3: maps of one wave are at least three apart, and no two of them ever touch the same neighbour. Loading only
+	 * ever adds flags, so the result does not depend on the order within a wave.
+	 */
+	private void loadMaps(ForkJoinPool pool, MapDefinition[] maps) {
+		long start = System.currentTimeMillis();
+		byte[][] mapData = new byte[maps.length][];
+		byte[][] landscapeData = new byte[maps.length][];
+		int[][] keys = new int[maps.length][];
+		IntArrayList[] waves = new IntArrayList[9];
+		for (int i = 0; i < waves.length; i++) {
+			waves[i] = new IntArrayList();
+		}
 		
-		// This definition is a bit... hacky. It's to avoid recursive dependencies.
-		if (!lazy) {
-			for (int x = 0; x < 256; x++) {
-				for (int z = 0; z < 256; z++) {
-					int region = (x << 8) | z;
-					
-					try {
-						int mapId = store.getIndex(5).getDescriptor().getArchiveID("m" + x + "_" + z);
-						int landscapeId = store.getIndex(5).getDescriptor().getArchiveID("l" + x + "_" + z);
-						if (mapId >= 0 && landscapeId >= 0) {
-							maps[region] = new MapDefinition(x, z);
+		IndexTable index = store.getIndex(5);
+		for (int x = 0; x < 256; x++) {
+			for (int z = 0; z < 256; z++) {
+				int region = (x << 8) | z;
+				
+				try {
+					int mapId = index.getDescriptor().getArchiveID("m" + x + "_" + z);
+					int landscapeId = index.getDescriptor().getArchiveID("l" + x + "_" + z);
+					if (mapId >= 0 && landscapeId >= 0) {
+						maps[region] = new MapDefinition(x, z, collision);
+						
+						if (index.getDescriptor().archiveExists(landscapeId) && index.getDescriptor().archiveExists(mapId)) {
+							mapData[region] = index.getArchive(mapId);
+							landscapeData[region] = index.getArchive(landscapeId);
+							keys[region] = MapDecryptionKeys.get(region);
+							waves[(x % 3) * 3 + z % 3].add(region);
 						}
-					} catch (Exception ignored) {
-						ignored.printStackTrace();
-					}
-				}
-			}
-			
-			for (int x = 0; x < 256; x++) {
-				for (int z = 0; z < 256; z++) {
-					int region = (x << 8) | z;
-					
-					try {
-						loadDefinition(MapDefinition.class, region);
-					} catch (Exception ignored) {
-						if (ignored.getMessage() == null || !ignored.getMessage().contains("Error while parsing archive header"))
-							ignored.printStackTrace();
 					}
+				} catch (Exception ignored) {
+					ignored.printStackTrace();
 				}
 			}
 		}
 		
-		// Load varbits
-		int numVarbits = store.getIndex(2).getDescriptor().getLastFileId(14);
-		VarbitDefinition[] varbits = new VarbitDefinition[numVarbits];
-		definitionMaps.put(VarbitDefinition.class, varbits);
-		
-		if (!lazy) {
-			for (int id = 0; id < numVarbits; id++) {
-				varbits[id] = loadDefinition(VarbitDefinition.class, id);
-			}
-		}
-		
-		// Load enums
-		int numEnums = store.getIndex(2).getDescriptor().getLastFileId(8);
-		EnumDefinition[] enums = new EnumDefinition[numEnums];
-		definitionMaps.put(EnumDefinition.class, enums);
-		
-		if (!lazy) {
-			for (int id = 0; id < numEnums; id++) {
-				enums[id] = loadDefinition(EnumDefinition.class, id);
-			}
+		long read = System.currentTimeMillis();
+		int loaded = 0;
+		for (IntArrayList wave : waves) {
+			pool.submit(() -> Arrays.stream(wave.toIntArray()).parallel().forEach(region -> {
+				try {
+					byte[] map = ArchiveDecoder.decode(mapData[region], null);
+					byte[] landscape = ArchiveDecoder.decode(landscapeData[region], keys[region]);
+					maps[region].load(this, map, landscape, false, true);
+				} catch (Exception e) {
+					//logger.error("Could not load map {}!", region, e);
+				}
+				
+				mapData[region] = null;
+				landscapeData[region] = null;
+			})).join();
+			loaded += wave.size();
 		}
 		
-		int spotAnimCount = store.getIndex(2).getDescriptor().getLastFileId(13);
-		
-		logger.info("Loaded {} item definitions.", numItems);
-		logger.info("Loaded {} npc definitions.", numNpcs);
-		logger.info("Loaded {} object definitions.", numObjects);
-		logger.info("Loaded {} varbit definitions.", numVarbits);
-		logger.info("Loaded {} enum definitions.", numEnums);
-		logger.info("Loaded {} spotanim definitions.", spotAnimCount);
+		logger.info("Decoded {} maps in {}ms ({}ms reading).", loaded, System.currentTimeMillis() - start, read - start);
 	}
 	
 	private <T extends Definition> T loadDefinition(Class<T> type, int id, boolean create) {
@@ -175,29 +242,25 @@ public class DefinitionRepository {
 			int mapId = store.getIndex(5).getDescriptor().getArchiveID("m" + x + "_" + z);
 			int landscapeId = store.getIndex(5).getDescriptor().getArchiveID("l" + x + "_" + z);
 			
-			MapDefinition[] arr = (MapDefinition[]) definitionMaps.get(type);
-			
 			if (landscapeId != -1 && mapId != -1 && store.getIndex(5).getDescriptor().archiveExists(landscapeId) && store.getIndex(5).getDescriptor().archiveExists(mapId)) {
+				MapDefinition definition = new MapDefinition(x, z, collision);
 				try {
 					byte[] map = store.getFileDirect(5, mapId, 0);
 					byte[] decrypted = store.getEncryptedFileDirect(5, landscapeId, 0, MapDecryptionKeys.get(id));
 					
-					if (arr[id] == null)
-						arr[id] = new MapDefinition(x, z);
-					
-					arr[id].load(this, map, decrypted, false);
+					pendingMaps[id] = definition;
+					definition.load(this, map, decrypted, false, !clippedMaps[id]);
+					clippedMaps[id] = true;
 				} catch (Exception e) {
 					//logger.error("Could not load map {} {}!", id, landscapeId, e);
+				} finally {
+					pendingMaps[id] = null;
 				}
 				
-				return (T) arr[id];
+				return (T) definition;
 			} else {
 				// New empty map, used mainly when instancing.
-				if (create) {
-					arr[id] = new MapDefinition(x, z);
-				}
-				
-				return (T) arr[id];
+				return create ? (T) new MapDefinition(x, z, collision) : null;
 			}
 		} else if (type == VarpDefinition.class) {
 			return (T) new VarpDefinition(id, store.getIndex(2).getContainer(16).getFileData(id, true, true));
@@ -222,11 +285,78 @@ public class DefinitionRepository {
 		if (id < 0 || id >= arr.length)
 			return null;
 		
-		if (arr[id] == null) {
-			return arr[id] = (T) loadDefinition(type, id, create);
+		CacheStats stats = this.stats.computeIfAbsent(type, t -> new CacheStats());
+		T definition = arr[id];
+		if (definition != null) {
+			VarHandle.acquireFence(); // Pairs with the release before publishing, so we see it fully loaded
+			stats.hits.increment();
+			if (maxResidentMaps > 0 && type == MapDefinition.class)
+				mapAccess[id] = ++accessClock; // Racy, but recency only needs to be roughly right
+			return definition;
+		}
+		
+		synchronized (loadLock) {
+			if ((definition = arr[id]) != null) {
+				stats.hits.increment();
+				return definition;
+			}
+			
+			if (type == MapDefinition.class && pendingMaps[id] != null)
+				return (T) pendingMaps[id];
+			
+			long start = System.nanoTime();
+			definition = loadDefinition(type, id, create);
+			stats.misses.increment();
+			stats.loadNanos.add(System.nanoTime() - start);
+			
+			VarHandle.releaseFence();
+			arr[id] = definition;
+			
+			if (maxResidentMaps > 0 && type == MapDefinition.class && definition != null && clippedMaps[id])
+				resident(id);
+			return definition;
+		}
+	}
+	
+	/**
+	 * Tracks a map loaded from the store, evicting the least recently used ones while there are too many. Only the
+	 * definition is dropped: its clip flags stay in the collision map, and loading it again skips clipping.
+	 */
+	private void resident(int region) {
+		if (!residentMaps.contains(region))
+			residentMaps.add(region);
+		mapAccess[region] = ++accessClock;
+		
+		MapDefinition[] maps = (MapDefinition[]) definitionMaps.get(MapDefinition.class);
+		while (residentMaps.size() > maxResidentMaps) {
+			int oldest = 0;
+			for (int i = 1; i < residentMaps.size(); i++) {
+				if (mapAccess[residentMaps.getInt(i)] < mapAccess[residentMaps.getInt(oldest)])
+					oldest = i;
+			}
+			
+			maps[residentMaps.getInt(oldest)] = null;
+			residentMaps.set(oldest, residentMaps.getInt(residentMaps.size() - 1));
+			residentMaps.removeInt(residentMaps.size() - 1);
+			evictions++;
 		}
+	}
+	
+	/**
+	 * @return hits, misses and the average load time per definition type, and map residency, formatted for logging.
+	 */
+	public String summary() {
+		StringBuilder summary = new StringBuilder("Definitions:");
+		stats.forEach((type, counters) -> {
+			long misses = counters.misses.sum();
+			summary.append(String.format(" %s %d hits, %d misses (%.2fms avg);", type.getSimpleName(), counters.hits.sum(), misses,
+					misses == 0 ? 0 : counters.loadNanos.sum() / 1e6 / misses));
+		});
 		
-		return ((T[]) definitionMaps.get(type))[id];
+		synchronized (loadLock) {
+			summary.append(String.format(" %d maps resident, %d evicted.", residentMaps.size(), evictions));
+		}
+		return summary.toString();
 	}
 	
 	public void unset(Class<? extends Definition> type, int id) {
@@ -238,4 +368,22 @@ public class DefinitionRepository {
 		return definitionMaps.get(type).length;
 	}
 	
+	/**
+	 * @return the clip flags of every loaded map.
+	 */
+	public CollisionMap collision() {
+		return collision;
+	}
+	
+	private static final class CacheStats {
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder loadNanos = new LongAdder();
+	}
+	
+	@FunctionalInterface
+	private interface Decoder<T extends Definition> {
+		T decode(int id, byte[] data);
+	}
+	
 }
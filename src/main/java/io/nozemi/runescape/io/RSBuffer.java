@@ -31,6 +31,19 @@ public class RSBuffer {
 		return backing;
 	}
 	
+	/**
+	 * Empties the buffer and forgets the packet state, so it can be used to build another packet.
+	 */
+	public RSBuffer reset() {
+		backing.clear();
+		sizeIndicator = -1;
+		type = null;
+		bitPosition = 0;
+		opcode = -1;
+		finished = false;
+		return this;
+	}
+	
 	public RSBuffer packet(int id) {
 		opcode = id;
 		return this;
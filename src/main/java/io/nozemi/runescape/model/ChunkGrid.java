@@ -0,0 +1,150 @@
+package io.nozemi.runescape.model;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spatial index of entities, bucketed by the 8x8 chunk they stand in (see {@link Tile#chunk()}).
+ * <p>
+ * Area queries only visit the buckets of the chunks overlapping the area, or the occupied buckets when there are
+ * fewer of those, so the cost scales with the entities nearby rather than with the capacity of the owning list.
+ * The chunk an entity is filed under is tracked on the entity itself, and is kept in sync by {@link Entity#tile(Tile)}.
+ */
+public class ChunkGrid<T extends Entity> {
+
+	/**
+	 * Marker for an entity that is not present in any grid.
+	 */
+	static final int UNINDEXED = -1;
+
+	private final Int2ObjectOpenHashMap<Bucket> buckets = new Int2ObjectOpenHashMap<>();
+	private final List<Bucket> occupied = new ArrayList<>();
+
+	public void insert(T entity) {
+		int chunk = entity.tile().chunk();
+		Bucket bucket = buckets.get(chunk);
+
+		if (bucket == null) {
+			bucket = new Bucket(chunk, occupied.size());
+			buckets.put(chunk, bucket);
+			occupied.add(bucket);
+		}
+
+		bucket.entities.add(entity);
+		entity.indexedChunk = chunk;
+	}
+
+	public void remove(T entity) {
+		if (entity.indexedChunk == UNINDEXED)
+			return;
+
+		Bucket bucket = buckets.get(entity.indexedChunk);
+		entity.indexedChunk = UNINDEXED;
+		if (bucket == null)
+			return;
+
+		List<Entity> entities = bucket.entities;
+		for (int i = 0; i < entities.size(); i++) {
+			if (entities.get(i) == entity) {
+				// Order within a chunk does not matter, so swap the last one in instead of shifting.
+				Entity last = entities.remove(entities.size() - 1);
+				if (last != entity)
+					entities.set(i, last);
+				break;
+			}
+		}
+
+		if (entities.isEmpty()) {
+			Bucket last = occupied.remove(occupied.size() - 1);
+			if (last != bucket) {
+				occupied.set(bucket.slot, last);
+				last.slot = bucket.slot;
+			}
+			buckets.remove(bucket.chunk);
+		}
+	}
+
+	/**
+	 * Moves the entity to the bucket of its current tile, if it crossed a chunk border since it was last filed.
+	 */
+	public void relocate(T entity) {
+		if (entity.indexedChunk == UNINDEXED || entity.indexedChunk == entity.tile().chunk())
+			return;
+
+		remove(entity);
+		insert(entity);
+	}
+
+	/**
+	 * Collects the entities standing inside the area. The result is a snapshot, so callers are free to move, add or
+	 * remove entities while consuming it.
+	 */
+	public List<T> inArea(Area area) {
+		List<T> result = new ArrayList<>();
+		if (area.x2 < 0 || area.z2 < 0)
+			return result;
+
+		int cx1 = Math.max(0, area.x1) >> 3;
+		int cz1 = Math.max(0, area.z1) >> 3;
+		int cx2 = area.x2 >> 3;
+		int cz2 = area.z2 >> 3;
+		long spanned = (long) (cx2 - cx1 + 1) * (cz2 - cz1 + 1);
+
+		if (spanned <= occupied.size()) {
+			for (int cx = cx1; cx <= cx2; cx++) {
+				for (int cz = cz1; cz <= cz2; cz++) {
+					Bucket bucket = buckets.get((cx << 16) | cz);
+					if (bucket != null)
+						collect(bucket, area, result);
+				}
+			}
+		} else {
+			for (int i = 0; i < occupied.size(); i++) {
+				Bucket bucket = occupied.get(i);
+				int cx = bucket.chunk >> 16;
+				int cz = bucket.chunk & 0xFFFF;
+				if (cx >= cx1 && cx <= cx2 && cz >= cz1 && cz <= cz2)
+					collect(bucket, area, result);
+			}
+		}
+
+		return result;
+	}
+
+	public int count(Area area) {
+		return inArea(area).size();
+	}
+
+	/**
+	 * @return the number of chunks that currently hold at least one entity.
+	 */
+	public int occupiedChunks() {
+		return occupied.size();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void collect(Bucket bucket, Area area, List<T> result) {
+		List<Entity> entities = bucket.entities;
+		for (int i = 0; i < entities.size(); i++) {
+			Entity e = entities.get(i);
+			if (area.contains(e.tile()))
+				result.add((T) e);
+		}
+	}
+
+	private static class Bucket {
+
+		private final int chunk;
+		private final List<Entity> entities = new ArrayList<>(4);
+		private int slot; // Position in the occupied list
+
+		private Bucket(int chunk, int slot) {
+			this.chunk = chunk;
+			this.slot = slot;
+		}
+
+	}
+
+}
@@ -0,0 +1,176 @@
+package io.nozemi.runescape.model;
+
+import io.netty.buffer.Unpooled;
+import io.nozemi.runescape.io.RSBuffer;
+import io.nozemi.runescape.model.entity.Player;
+import io.nozemi.runescape.model.map.MapObj;
+import io.nozemi.runescape.net.message.game.command.AddGroundItem;
+import io.nozemi.runescape.net.message.game.command.RemoveGroundItem;
+import io.nozemi.runescape.net.message.game.command.RemoveObject;
+import io.nozemi.runescape.net.message.game.command.SpawnObject;
+import io.nozemi.runescape.net.message.game.command.UpdateChunk;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * The object and ground item changes of a tick, per chunk and level, sent as one {@link UpdateChunk} per chunk to the
+ * players who see it. Ops are encoded when they happen; a chunk's packets are built once for all its viewers sharing
+ * an active map, only players a private ground item op concerns get packets of their own.
+ */
+final class ChunkUpdates {
+
+    private static final byte EVERYONE = 0;
+    private static final byte OWNER = 1;
+    private static final byte ALL_BUT_OWNER = 2;
+
+    private final Int2ObjectOpenHashMap<Pending> chunks = new Int2ObjectOpenHashMap<>();
+
+    private long ops;
+    private long packets;
+
+    /**
+     * @param everyone whether everyone sees the item, otherwise only its owner does.
+     */
+    void addGroundItem(GroundItem item, boolean everyone) {
+        AddGroundItem.writeBody(op(item.tile(), UpdateChunk.ADD_GROUND_ITEM, everyone ? EVERYONE : OWNER, item.owner()), item);
+    }
+
+    /**
+     * Shows the item to everyone but its owner, who saw it all along.
+     */
+    void broadcastGroundItem(GroundItem item) {
+        AddGroundItem.writeBody(op(item.tile(), UpdateChunk.ADD_GROUND_ITEM, ALL_BUT_OWNER, item.owner()), item);
+    }
+
+    void removeGroundItem(GroundItem item, boolean everyone) {
+        RemoveGroundItem.writeBody(op(item.tile(), UpdateChunk.REMOVE_GROUND_ITEM, everyone ? EVERYONE : OWNER, item.owner()), item);
+    }
+
+    void spawnObject(MapObj obj) {
+        SpawnObject.writeBody(op(obj.tile(), UpdateChunk.SPAWN_OBJECT, EVERYONE, null), obj);
+    }
+
+    void removeObject(MapObj obj) {
+        RemoveObject.writeBody(op(obj.tile(), UpdateChunk.REMOVE_OBJECT, EVERYONE, null), obj);
+    }
+
+    /**
+     * Writes the packets of every changed chunk to the players on its level whose active map contains it.
+     *
+     * @param playersNear visits the players near a tile.
+     */
+    void flush(BiConsumer<Tile, Consumer<Player>> playersNear) {
+        if (chunks.isEmpty())
+            return;
+
+        for (Pending pending : chunks.values()) {
+            // Most viewers of a chunk share an active map, and with it the relative base of the chunk
+            Int2ObjectOpenHashMap<List<UpdateChunk>> shared = new Int2ObjectOpenHashMap<>(2);
+            playersNear.accept(pending.tile, p -> {
+                if (p.bot() || p.activeMap() == null || p.tile().level != pending.tile.level || !p.activeArea().contains(pending.tile))
+                    return;
+
+                List<UpdateChunk> built;
+                if (pending.concerns(p.id())) {
+                    built = pending.build(p, p.id());
+                } else {
+                    int key = ((p.activeMap().x & 0x7FFF) << 15) | (p.activeMap().z & 0x7FFF);
+                    built = shared.get(key);
+                    if (built == null)
+                        shared.put(key, built = pending.build(p, null));
+                }
+
+                for (UpdateChunk packet : built)
+                    p.write(packet);
+                packets += built.size();
+            });
+            ops += pending.starts.size();
+        }
+        chunks.clear();
+    }
+
+    /**
+     * @return the ops and packets sent since the last call, formatted for logging.
+     */
+    String summary() {
+        String summary = String.format("Chunk updates: %d ops in %d packets.", ops, packets);
+        ops = packets = 0;
+        return summary;
+    }
+
+    private RSBuffer op(Tile tile, int index, byte audience, Object owner) {
+        int key = (tile.level << 22) | (((tile.x >> 3) & 0x7FF) << 11) | ((tile.z >> 3) & 0x7FF);
+        Pending pending = chunks.get(key);
+        if (pending == null)
+            chunks.put(key, pending = new Pending(new Tile(tile.x & ~7, tile.z & ~7, tile.level)));
+
+        pending.starts.add(pending.ops.get().writerIndex());
+        pending.audiences.add(audience);
+        pending.owners.add(owner);
+        if (audience != EVERYONE && owner != null)
+            pending.hasPrivate = true;
+        return pending.ops.writeByte(index);
+    }
+
+    private static final class Pending {
+        private final Tile tile; // South-west corner
+        private final RSBuffer ops = new RSBuffer(Unpooled.buffer(32));
+        private final IntArrayList starts = new IntArrayList();
+        private final ByteArrayList audiences = new ByteArrayList();
+        private final ObjectArrayList<Object> owners = new ObjectArrayList<>();
+        private boolean hasPrivate;
+
+        private Pending(Tile tile) {
+            this.tile = tile;
+        }
+
+        /**
+         * @return whether the player is the owner of a private op, and needs packets of their own.
+         */
+        private boolean concerns(Object id) {
+            if (!hasPrivate)
+                return false;
+
+            for (int i = 0; i < owners.size(); i++) {
+                if (audiences.getByte(i) != EVERYONE && id.equals(owners.get(i)))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * @param viewer the id of the player the packets are for, or null for a player no private op concerns.
+         */
+        private List<UpdateChunk> build(Player player, Object viewer) {
+            UpdateChunk.Builder builder = new UpdateChunk.Builder(player, tile);
+            for (int i = 0; i < starts.size(); i++) {
+                if (!visible(i, viewer))
+                    continue;
+
+                // An op ends where the next one starts
+                int from = starts.getInt(i);
+                int to = i + 1 < starts.size() ? starts.getInt(i + 1) : ops.get().writerIndex();
+                builder.ops(ops.get(), from, to - from);
+            }
+            return builder.build();
+        }
+
+        private boolean visible(int op, Object viewer) {
+            switch (audiences.getByte(op)) {
+                case OWNER:
+                    return owners.get(op) == null || (viewer != null && viewer.equals(owners.get(op)));
+                case ALL_BUT_OWNER:
+                    return viewer == null || !viewer.equals(owners.get(op));
+                default:
+                    return true;
+            }
+        }
+    }
+
+}
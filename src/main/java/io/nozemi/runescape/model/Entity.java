@@ -37,6 +37,7 @@ public abstract class Entity {
     private LockType lock = LockType.NONE;
     protected SyncInfo sync;
     protected LinkedList<Hit> hits = new LinkedList<>();
+    int indexedChunk = ChunkGrid.UNINDEXED; // Chunk this entity is filed under in the world's spatial index
 
     public Entity() {
         this(null, new Tile(0, 0, 0));
@@ -77,6 +78,9 @@ public abstract class Entity {
 
     public void tile(Tile tile) {
         this.tile = tile;
+
+        if (world != null)
+            world.relocate(this);
     }
 
     public void teleport(Tile tile) {
@@ -92,7 +96,7 @@ public abstract class Entity {
             Transmogrify.hardReset((Player) this);
         }
 
-        tile = new Tile(x, z, level);
+        tile(new Tile(x, z, level));
         sync.teleported(true);
         pathQueue.clear();
     }
@@ -125,7 +129,7 @@ public abstract class Entity {
             if (isPlayer()) {
                 ((Player) this).sound(-1);
             }
-        }).submit(TaskManager.playerChains());
+        }).submit();
     }
 
     public int size() {
@@ -191,9 +195,7 @@ public abstract class Entity {
             pathQueue.clear();
         }
 
-        if (TaskManager.playerChains().containsKey(this.index)) {
-            TaskManager.playerChains().get(this.index).forEach(Interruptible::cancel);
-        }
+        TaskManager.cancel(this);
     }
 
     public void putattrib(AttributeKey key, Object v) {
@@ -260,7 +262,11 @@ public abstract class Entity {
             LinkedList<Direction> dirs = new LinkedList<>();
             PathRouteFinder finder = new PathRouteFinder(this);
             Route route = Route.to(world, obj);
-            finder.path(route, tile.x, tile.z, tile.level, size(), dirs);
+            try {
+                finder.path(route, tile.x, tile.z, tile.level, size(), dirs);
+            } finally {
+                finder.free();
+            }
 
             Tile cur = tile;
             while (!dirs.isEmpty()) {
@@ -270,7 +276,6 @@ public abstract class Entity {
 
             }
 
-            finder.free();
             return !route.alternative;//temp
         } else {
             ObjectStrategy target = new ObjectStrategy(world, obj);
@@ -333,7 +338,11 @@ public abstract class Entity {
         if (steroidsRoute) {
             LinkedList<Direction> dirs = new LinkedList<>();
             PathRouteFinder prf = new PathRouteFinder(this);
-            prf.path(Route.to(new Tile(x, z, tile.level)), tile.x, tile.z, tile.level, size(), dirs);
+            try {
+                prf.path(Route.to(new Tile(x, z, tile.level)), tile.x, tile.z, tile.level, size(), dirs);
+            } finally {
+                prf.free();
+            }
 
             Tile cur = tile;
             while (!dirs.isEmpty()) {
@@ -342,7 +351,6 @@ public abstract class Entity {
                 pathQueue.stepClipped(cur.x, cur.z, mode);
 
             }
-            prf.free();
 
             if (isPlayer()) {
                 ((Player) this).write(new ChangeMapMarker(cur.x, cur.z));
@@ -416,7 +424,7 @@ public abstract class Entity {
             })
             .completeCondition(() -> {
                 return this.tile().distance(destination) <= distance;
-            }).submit(TaskManager.playerChains());
+            }).submit();
     }
 
     public boolean locked() {
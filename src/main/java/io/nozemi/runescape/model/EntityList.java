@@ -4,6 +4,7 @@ import io.nozemi.runescape.util.PermutedSequence;
 import kotlin.Unit;
 import kotlin.jvm.functions.Function1;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
@@ -18,11 +19,19 @@ public class EntityList<T extends Entity> {
 	private List<Entity> entriesList;
 	private PermutedSequence permutedSequence;
 	private int size; // Current size, not capacity
+	private ChunkGrid<T> grid; // Optional spatial index for area queries
 	
 	public EntityList(int size) {
+		this(size, false);
+	}
+	
+	public EntityList(int size, boolean chunkIndexed) {
 		entries = new Entity[size];
 		entriesList = Arrays.asList(entries);
 		permutedSequence = new PermutedSequence(size);
+		
+		if (chunkIndexed)
+			grid = new ChunkGrid<>();
 	}
 	
 	public T get(int index) {
@@ -42,6 +51,9 @@ public class EntityList<T extends Entity> {
 			if (entries[i] == null) {
 				entries[i] = obj;
 				size++;
+				
+				if (grid != null)
+					grid.insert(obj);
 				return i;
 			}
 		}
@@ -52,6 +64,8 @@ public class EntityList<T extends Entity> {
 	public boolean remove(T obj) {
 		for (int i = 1; i < entries.length; i++) {
 			if (entries[i] == obj) {
+				if (grid != null)
+					grid.remove(obj);
 				entries[i].index(-1);
 				entries[i] = null;
 				size--;
@@ -70,13 +84,48 @@ public class EntityList<T extends Entity> {
 		T old = (T) entries[index];
 		entries[index] = null;
 		
-		if (old != null)
+		if (old != null) {
 			size--;
+			
+			if (grid != null)
+				grid.remove(old);
+		}
 		
 		return old;
 	}
 	
+	/**
+	 * Re-files the entity in the spatial index after a tile change. Does nothing for lists without one.
+	 */
+	public void relocate(T entity) {
+		if (grid != null)
+			grid.relocate(entity);
+	}
+	
+	public boolean chunkIndexed() {
+		return grid != null;
+	}
+	
+	/**
+	 * @return a snapshot of the entities standing inside the area, in no particular order.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> inArea(Area area) {
+		if (grid != null)
+			return grid.inArea(area);
+		
+		List<T> found = new ArrayList<>();
+		for (Entity e : entries) {
+			if (e != null && area.contains(e.tile()))
+				found.add((T) e);
+		}
+		return found;
+	}
+	
 	public int count(Area area) {
+		if (grid != null)
+			return grid.count(area);
+		
 		int count = 0;
 		
 		for (Entity entity : entries) {
@@ -87,8 +136,9 @@ public class EntityList<T extends Entity> {
 		return count;
 	}
 	
+	@SafeVarargs
 	@SuppressWarnings("unchecked")
-	public void forEach(Consumer<? super T>... actions) {
+	public final void forEach(Consumer<? super T>... actions) {
 		int size = entriesList.size();
 		
 		for (Consumer<? super T> a : actions) {
@@ -100,8 +150,9 @@ public class EntityList<T extends Entity> {
 		}
 	}
 	
+	@SafeVarargs
 	@SuppressWarnings("unchecked")
-	public void forEachKt(Function1<? super T, Unit>... actions) {
+	public final void forEachKt(Function1<? super T, Unit>... actions) {
 		int size = entriesList.size();
 		
 		for (Function1<? super T, Unit> a : actions) {
@@ -113,8 +164,16 @@ public class EntityList<T extends Entity> {
 		}
 	}
 	
+	@SafeVarargs
 	@SuppressWarnings("unchecked")
-	public void forEachInArea(Area area, Consumer<? super T>... actions) {
+	public final void forEachInArea(Area area, Consumer<? super T>... actions) {
+		if (grid != null) {
+			List<T> found = grid.inArea(area);
+			for (Consumer<? super T> a : actions)
+				found.forEach(a);
+			return;
+		}
+		
 		int size = entriesList.size();
 		
 		for (Consumer<? super T> a : actions) {
@@ -126,8 +185,16 @@ public class EntityList<T extends Entity> {
 		}
 	}
 	
+	@SafeVarargs
 	@SuppressWarnings("unchecked")
-	public void forEachInAreaKt(Area area, Function1<? super T, Unit>... actions) {
+	public final void forEachInAreaKt(Area area, Function1<? super T, Unit>... actions) {
+		if (grid != null) {
+			List<T> found = grid.inArea(area);
+			for (Function1<? super T, Unit> a : actions)
+				found.forEach(a::invoke);
+			return;
+		}
+		
 		int size = entriesList.size();
 		
 		for (Function1<? super T, Unit> a : actions) {
@@ -139,8 +206,9 @@ public class EntityList<T extends Entity> {
 		}
 	}
 	
+	@SafeVarargs
 	@SuppressWarnings("unchecked")
-	public void forEachShuffled(Consumer<? super T>... actions) {
+	public final void forEachShuffled(Consumer<? super T>... actions) {
 		if (entries.length != permutedSequence.size()) {
 			permutedSequence = new PermutedSequence(entries.length);
 		}
@@ -157,7 +225,17 @@ public class EntityList<T extends Entity> {
 		permutedSequence.reset();
 	}
 	
-	public void forEachWithinDistance(Tile tile, int distance, Consumer<? super T>... actions) {
+	@SafeVarargs
+	@SuppressWarnings("unchecked")
+	public final void forEachWithinDistance(Tile tile, int distance, Consumer<? super T>... actions) {
+		if (grid != null) {
+			List<T> found = grid.inArea(tile.area(distance));
+			found.removeIf(e -> e.tile().distance(tile) > distance);
+			for (Consumer<? super T> a : actions)
+				found.forEach(a);
+			return;
+		}
+		
 		for (Consumer<? super T> a : actions)
 			entriesList.stream().filter(e -> e != null && e.tile().distance(tile) <= distance).forEach((Consumer<? super Entity>) a);
 	}
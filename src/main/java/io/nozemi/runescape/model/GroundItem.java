@@ -26,6 +26,11 @@ public class GroundItem {
     private Object pkedFrom;
     private boolean forceBroadcast;
 
+    // Set while the item lies on the ground, see GroundItemStore
+    GroundItemStore store;
+    GroundItemStore.StackKey stackKey;
+    int timerGeneration;
+
     public GroundItem(World world, Item item, Tile tile, Object ownerId) {
         this.item = item;
         this.tile = tile;
@@ -66,6 +71,8 @@ public class GroundItem {
 
     public GroundItem respawns(boolean b) {
         respawns = b;
+        if (store != null)
+            store.reschedule(this);
         return this;
     }
     public GroundItem respawnTimer(int v) {
@@ -80,6 +87,8 @@ public class GroundItem {
 
     public GroundItem forceBroadcast(boolean b) {
         forceBroadcast = b;
+        if (b && store != null)
+            store.reschedule(this);
         return this;
     }
 
@@ -94,6 +103,8 @@ public class GroundItem {
 
     public GroundItem lifetime(long lifetime) {
         this.lifetime = lifetime;
+        if (store != null)
+            store.reschedule(this);
         return this;
     }
 
@@ -119,6 +130,8 @@ public class GroundItem {
 
     public GroundItem broadcasted(boolean b) {
         broadcasted = b;
+        if (!b && store != null)
+            store.reschedule(this);
         return this;
     }
 
@@ -130,6 +143,22 @@ public class GroundItem {
         return !respawns && System.currentTimeMillis() >= spawned + lifetime;
     }
 
+    /**
+     * @return when {@link #shouldBroadcast()} becomes true without further changes, or Long.MAX_VALUE if never.
+     */
+    long broadcastAt() {
+        if (forceBroadcast)
+            return 0;
+        return hidden || !tradable ? Long.MAX_VALUE : spawned + 60_000;
+    }
+
+    /**
+     * @return when {@link #shouldBeRemoved()} becomes true without further changes, or Long.MAX_VALUE if never.
+     */
+    long despawnAt() {
+        return respawns ? Long.MAX_VALUE : spawned + lifetime;
+    }
+
     public boolean valid(World world) {
         return world.groundItemValid(this);
     }
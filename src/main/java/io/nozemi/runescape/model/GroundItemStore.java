@@ -0,0 +1,274 @@
+package io.nozemi.runescape.model;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * The items lying on the ground, indexed per 8x8 chunk for syncing and by tile, item and owner for stacking. When items
+ * become visible to everyone and when they despawn is kept in a hashed timing wheel of game ticks, so a tick only looks
+ * at the items whose time came rather than at every item on the ground.
+ * <p>
+ * Timers are checked again when they fire, and rescheduled if the item changed in the meantime; an item changing its
+ * deadlines while on the ground {@link #reschedule(GroundItem) reschedules} itself, which leaves its old timers to be
+ * dropped when they come up.
+ */
+final class GroundItemStore {
+
+    private static final long TICK = 600;
+    private static final int WHEEL_SIZE = 512; // Ticks, a bit over 5 minutes: most items expire within one turn
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private final Int2ObjectOpenHashMap<ReferenceLinkedOpenHashSet<GroundItem>> chunks = new Int2ObjectOpenHashMap<>();
+    private final Map<StackKey, GroundItem> stacks = new HashMap<>();
+    private int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ObjectArrayList<Timer>[] wheel = new ObjectArrayList[WHEEL_SIZE];
+    private long tick;
+    private int timers;
+
+    GroundItemStore() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ObjectArrayList<>();
+        }
+    }
+
+    /**
+     * Puts the item on the ground.
+     *
+     * @param stackable whether later drops of the same item by the same owner on the tile should {@link #stack stack}
+     *                  onto this one.
+     */
+    void add(GroundItem item, boolean stackable) {
+        if (item.store != null)
+            return;
+
+        item.store = this;
+        size++;
+        chunk(item.tile()).add(item);
+        if (stackable) {
+            StackKey key = new StackKey(item);
+            item.stackKey = key;
+            stacks.put(key, item);
+        }
+        schedule(item);
+    }
+
+    /**
+     * @return false if the item was not on the ground.
+     */
+    boolean remove(GroundItem item) {
+        if (item.store != this)
+            return false;
+
+        item.store = null;
+        size--;
+        int key = chunkKey(item.tile());
+        ReferenceLinkedOpenHashSet<GroundItem> chunk = chunks.get(key);
+        chunk.remove(item);
+        if (chunk.isEmpty())
+            chunks.remove(key);
+        if (item.stackKey != null) {
+            stacks.remove(item.stackKey, item);
+            item.stackKey = null;
+        }
+        return true;
+    }
+
+    boolean contains(GroundItem item) {
+        return item != null && item.store == this;
+    }
+
+    /**
+     * @return the item the drop would stack onto, or null if there is none.
+     */
+    GroundItem stack(GroundItem drop) {
+        return stacks.get(new StackKey(drop));
+    }
+
+    /**
+     * Passes the items lying in the area, on any level, to the consumer. Only the chunks the area overlaps are looked at.
+     */
+    void forEachIn(Area area, Consumer<GroundItem> consumer) {
+        for (int cx = area.x1 >> 3; cx <= area.x2 >> 3; cx++) {
+            for (int cz = area.z1 >> 3; cz <= area.z2 >> 3; cz++) {
+                ReferenceLinkedOpenHashSet<GroundItem> chunk = chunks.get(chunkKey(cx, cz));
+                if (chunk == null)
+                    continue;
+
+                for (GroundItem item : chunk) {
+                    if (area.contains(item.tile()))
+                        consumer.accept(item);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the items lying in the area, on any level.
+     */
+    ObjectArrayList<GroundItem> in(Area area) {
+        ObjectArrayList<GroundItem> items = new ObjectArrayList<>();
+        long chunkCount = (long) ((area.x2 >> 3) - (area.x1 >> 3) + 1) * ((area.z2 >> 3) - (area.z1 >> 3) + 1);
+        if (chunkCount > chunks.size()) {
+            // Larger than everything we hold, walk the chunks we have instead
+            for (ReferenceLinkedOpenHashSet<GroundItem> chunk : chunks.values()) {
+                for (GroundItem item : chunk) {
+                    if (area.contains(item.tile()))
+                        items.add(item);
+                }
+            }
+        } else {
+            forEachIn(area, items::add);
+        }
+        return items;
+    }
+
+    /**
+     * Advances the wheel by a tick and fires the timers that came up, all broadcasts before all despawns. Despawned
+     * items are removed from the store before the consumer sees them.
+     */
+    void cycle(Consumer<GroundItem> broadcast, Consumer<GroundItem> despawn) {
+        tick++;
+        ObjectArrayList<Timer> slot = wheel[(int) (tick & WHEEL_MASK)];
+        if (slot.isEmpty())
+            return;
+
+        ObjectArrayList<GroundItem> broadcasts = new ObjectArrayList<>();
+        ObjectArrayList<GroundItem> despawns = new ObjectArrayList<>();
+        long now = System.currentTimeMillis();
+
+        int kept = 0;
+        for (int i = 0; i < slot.size(); i++) {
+            Timer timer = slot.get(i);
+            if (timer.tick > tick) {
+                slot.set(kept++, timer); // Due in a later turn of the wheel
+                continue;
+            }
+
+            timers--;
+            GroundItem item = timer.item;
+            if (item.store != this || timer.generation != item.timerGeneration)
+                continue;
+
+            if (timer.despawn) {
+                if (item.shouldBeRemoved())
+                    despawns.add(item);
+                else
+                    wheelUp(item, item.despawnAt(), true, now);
+            } else if (!item.broadcasted()) {
+                if (item.shouldBroadcast())
+                    broadcasts.add(item);
+                else
+                    wheelUp(item, item.broadcastAt(), false, now);
+            }
+        }
+        slot.size(kept);
+
+        broadcasts.forEach(broadcast);
+        for (GroundItem item : despawns) {
+            if (remove(item))
+                despawn.accept(item);
+        }
+    }
+
+    /**
+     * Replaces the timers of an item on the ground, after one of its deadlines changed.
+     */
+    void reschedule(GroundItem item) {
+        if (item.store == this)
+            schedule(item);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int timers() {
+        return timers;
+    }
+
+    private void schedule(GroundItem item) {
+        item.timerGeneration++;
+        long now = System.currentTimeMillis();
+        if (!item.broadcasted())
+            wheelUp(item, item.broadcastAt(), false, now);
+        wheelUp(item, item.despawnAt(), true, now);
+    }
+
+    private void wheelUp(GroundItem item, long deadline, boolean despawn, long now) {
+        if (deadline == Long.MAX_VALUE)
+            return;
+
+        long ticks = Math.max(1, (deadline - now + TICK - 1) / TICK);
+        Timer timer = new Timer(item, item.timerGeneration, tick + ticks, despawn);
+        wheel[(int) (timer.tick & WHEEL_MASK)].add(timer);
+        timers++;
+    }
+
+    private ReferenceLinkedOpenHashSet<GroundItem> chunk(Tile tile) {
+        int key = chunkKey(tile);
+        ReferenceLinkedOpenHashSet<GroundItem> chunk = chunks.get(key);
+        if (chunk == null)
+            chunks.put(key, chunk = new ReferenceLinkedOpenHashSet<>());
+        return chunk;
+    }
+
+    private static int chunkKey(Tile tile) {
+        return chunkKey(tile.x >> 3, tile.z >> 3);
+    }
+
+    private static int chunkKey(int chunkX, int chunkZ) {
+        return ((chunkX & 0x7FF) << 11) | (chunkZ & 0x7FF);
+    }
+
+    private static final class Timer {
+        private final GroundItem item;
+        private final int generation;
+        private final long tick;
+        private final boolean despawn;
+
+        private Timer(GroundItem item, int generation, long tick, boolean despawn) {
+            this.item = item;
+            this.generation = generation;
+            this.tick = tick;
+            this.despawn = despawn;
+        }
+    }
+
+    /**
+     * What makes drops stack: the same item, on the same tile, of the same owner. Taken when the item is added, so
+     * changing its item later does not strand it in the index.
+     */
+    static final class StackKey {
+        private final Tile tile;
+        private final int id;
+        private final Object owner;
+
+        private StackKey(GroundItem item) {
+            this.tile = item.tile();
+            this.id = item.item().id();
+            this.owner = item.owner();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StackKey))
+                return false;
+            StackKey other = (StackKey) o;
+            return id == other.id && tile.equals(other.tile) && Objects.equals(owner, other.owner);
+        }
+
+        @Override
+        public int hashCode() {
+            return (tile.hashCode() * 31 + id) * 31 + Objects.hashCode(owner);
+        }
+    }
+
+}
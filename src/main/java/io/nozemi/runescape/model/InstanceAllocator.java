@@ -67,13 +67,9 @@ public class InstanceAllocator {
 		/*if (world.server().isVerbose())
 			logger.info("Cleaning up allocated maps...");*/
 		
-		// Calculate a list of tiles that players are currently at.
-		Set<Tile> maps = new HashSet<>();
-		world.players().forEach(player -> maps.add(player.tile));
-		
 		// Iterate over all the allocated maps, check for any players inside and if none, clear it.
 		List<InstancedMap> dealloc = new LinkedList<>();
-		allocated.stream().filter(map -> !map.persistent()).filter(map -> !containsany(map, maps)).forEach(dealloc::add);
+		allocated.stream().filter(map -> !map.persistent()).filter(map -> world.players().count(map) == 0).forEach(dealloc::add);
 		
 		// Remove young maps (ones that are younger than 30 seconds)
 		dealloc.removeIf(map -> System.currentTimeMillis() - map.createdAt() < 30_000);
@@ -85,15 +81,6 @@ public class InstanceAllocator {
 			logger.info("Cleaned up a total of {} allocated maps.", dealloc.size());*/
 	}
 	
-	private static boolean containsany(final InstancedMap map, final Set<Tile> tiles) {
-		for (Tile t : tiles) {
-			if (map.contains(t)) {
-				return true;
-			}
-		}
-		return false;
-	}
-	
 	/**
 	 * Deallocates the map without explicitly removing entities from the map as to
 	 * allow for other implementations to do this.
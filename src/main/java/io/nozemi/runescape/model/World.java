@@ -12,10 +12,12 @@ import io.nozemi.runescape.model.entity.npc.NpcCombatInfo;
 import io.nozemi.runescape.model.item.Item;
 import io.nozemi.runescape.model.map.Flags;
 import io.nozemi.runescape.model.map.MapObj;
+import io.nozemi.runescape.model.map.ObjectOverrides;
 import io.nozemi.runescape.net.message.game.command.*;
 import io.nozemi.runescape.script.Timer;
 import io.nozemi.runescape.script.TimerKey;
 import io.nozemi.runescape.script.TimerRepository;
+import io.nozemi.runescape.tasksystem.TaskManager;
 import io.nozemi.runescape.util.EquipmentInfo;
 import kotlin.ranges.IntRange;
 import org.apache.logging.log4j.LogManager;
@@ -29,7 +31,7 @@ import java.io.File;
 import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 @Component
 @Scope(value = ConfigurableBeanFactory.SCOPE_SINGLETON)
@@ -39,22 +41,27 @@ public class World {
 
     public static int plimit = 2000;
 
+    /**
+     * Furthest a player can stand from a tile that is still inside their 104x104 active map.
+     */
+    private static final int MAP_VIEW_RADIUS = 104;
+
     private Realm realm;
     private DefinitionRepository definitionRepository;
 
     private InstanceAllocator instanceAllocator = new InstanceAllocator(this);
 
-    private EntityList<Player> players = new EntityList<>(2048);
+    private EntityList<Player> players = new EntityList<>(2048, true);
     private EntityList<Player> pvpShuffablePid = new EntityList<>(2048);
     private Map<Object, Player> playerLookupMap = new HashMap<>();
     private Map<String, Player> playerNameLookupMap = new HashMap<>();
 
-    private EntityList<Npc> npcs = new EntityList<>(0xFFFF);
+    private EntityList<Npc> npcs = new EntityList<>(0xFFFF, true);
 
-    private List<MapObj> spawnedObjs = new LinkedList<>();
-    private List<MapObj> removedObjs = new LinkedList<>();
+    private ObjectOverrides objectOverrides = new ObjectOverrides();
 
-    private List<GroundItem> groundItems = new LinkedList<>();
+    private GroundItemStore groundItems = new GroundItemStore();
+    private final ChunkUpdates chunkUpdates = new ChunkUpdates();
 
     private NpcCombatInfo[] combatInfo;
 
@@ -106,6 +113,25 @@ public class World {
         return npcs;
     }
 
+    /**
+     * Keeps the chunk index of the players and npcs up to date. Called whenever an entity changes tile.
+     */
+    public void relocate(Entity entity) {
+        if (entity.isPlayer()) {
+            players.relocate((Player) entity);
+        } else if (entity.isNpc()) {
+            npcs.relocate((Npc) entity);
+        }
+    }
+
+    /**
+     * Visits the players close enough to the tile that it could be within their active map. Callers still need to
+     * check the exact active area, this only narrows down who to check.
+     */
+    private void forEachPlayerNear(Tile tile, Consumer<Player> action) {
+        players.forEachInArea(tile.area(MAP_VIEW_RADIUS), action);
+    }
+
     public DefinitionRepository definitions() {
         return definitionRepository;
     }
@@ -120,42 +146,43 @@ public class World {
 
     private void syncChunk(Player p, int x, int z) { // POST UPDATE
         Area area = new Area(x, z, x + 7, z + 7);
-        for (GroundItem item : groundItems) {
-            if (item != null && area.contains(item.tile()) && Tile.sameH(p, item)) {
+        UpdateChunk.Builder update = new UpdateChunk.Builder(p, new Tile(x, z));
+        groundItems.forEachIn(area, item -> {
+            if (Tile.sameH(p, item)) {
                 // Is this an item for us?
                 if (!p.id().equals(item.owner()) && !item.broadcasted()) {// Not ours, and not public yet. Bye.
-                    continue;
+                    return;
                 }
-                p.write(new SetMapBase(p, item.tile()));
-                p.write(new AddGroundItem(item));
+                update.addGroundItem(item);
             }
-        }
-        for (MapObj obj : removedObjs) {
-            if (obj != null && area.contains(obj.tile()) && Tile.sameH(p, obj)) {
-                p.write(new SetMapBase(p, obj.tile()));
-                p.write(new RemoveObject(obj));
+        });
+        objectOverrides.forEachIn(area, true, obj -> {
+            if (Tile.sameH(p, obj)) {
+                update.removeObject(obj);
             }
-        }
-        for (MapObj obj : spawnedObjs) {
-            if (obj != null && area.contains(obj.tile()) && Tile.sameH(p, obj)) {
-                p.write(new SetMapBase(p, obj.tile()));
-                p.write(new SpawnObject(obj));
+        });
+        objectOverrides.forEachIn(area, false, obj -> {
+            if (Tile.sameH(p, obj)) {
+                update.spawnObject(obj);
             }
-        }
+        });
+        update.writeTo(p);
     }
 
     private void desyncChunk(Player p, int x, int z) { // PRE UPDATE
         Area chunk = new Area(x, z, x + 7, z + 7);
-        groundItems.stream().filter(g -> (g.broadcasted() || g.owner() == p.id()) && chunk.contains(g.tile()) && Tile.sameLastH(p, g)).forEach(item -> {
-            p.write(new SetMapBase(p, item.tile()));
-            p.write(new RemoveGroundItem(item));
+        UpdateChunk.Builder update = new UpdateChunk.Builder(p, new Tile(x, z));
+        groundItems.forEachIn(chunk, item -> {
+            if ((item.broadcasted() || item.owner() == p.id()) && Tile.sameLastH(p, item)) {
+                update.removeGroundItem(item);
+            }
         });
-        for (MapObj obj : spawnedObjs) {
-            if (obj != null && chunk.contains(obj.tile()) && Tile.sameLastH(p, obj)) {
-                p.write(new SetMapBase(p, obj.tile()));
-                p.write(new RemoveObject(obj));
+        objectOverrides.forEachIn(chunk, false, obj -> {
+            if (Tile.sameLastH(p, obj)) {
+                update.removeObject(obj);
             }
-        }
+        });
+        update.writeTo(p);
     }
 
     public void syncMap(Player player, Area previousMap, boolean levelChange) {
@@ -170,8 +197,12 @@ public class World {
     }
 
     public int floorAt(Tile tile) {
-        MapDefinition active = definitionRepository.get(MapDefinition.class, tile.region());
-        return active == null ? 0 : active.getFloors()[tile.level][tile.x & 63][tile.z & 63];
+        return floorAt(tile.x, tile.z, tile.level);
+    }
+
+    public int floorAt(int x, int z, int level) {
+        MapDefinition active = definitionRepository.get(MapDefinition.class, ((x >> 6) << 8) | (z >> 6));
+        return active == null ? 0 : active.getFloors()[level][x & 63][z & 63];
     }
 
     public boolean isFloorFree(Tile t) {
@@ -179,12 +210,11 @@ public class World {
     }
 
     public int clipAt(int x, int z, int level) {
-        return clipAt(new Tile(x, z, level));
+        return definitionRepository.collision().clipAt(x, z, level);
     }
 
     public int clipAt(Tile tile) {
-        MapDefinition active = definitionRepository.get(MapDefinition.class, tile.region());
-        return active == null ? 0 : active.getMasks() == null ? 0 : active.getMasks()[tile.level][tile.x & 63][tile.z & 63];
+        return clipAt(tile.x, tile.z, tile.level);
     }
 
     public boolean isFloorFree(Tile t, int size) {
@@ -200,13 +230,15 @@ public class World {
     }
 
     public MapObj objByType(int type, int x, int z, int level) {
-        Optional<MapObj> removed = removedObjs.stream().filter(m -> m.type() == type && m.tile().equals(x, z, level)).findAny();
-        if (removed.isPresent())
-            return null;
-
-        Optional<MapObj> spawned = spawnedObjs.stream().filter(m -> m.type() == type && m.tile().equals(x, z, level)).findAny();
-        if (spawned.isPresent())
-            return spawned.get();
+        ObjectOverrides.TileOverrides overrides = objectOverrides.at(x, z, level);
+        if (overrides != null) {
+            if (overrides.removedByType(type))
+                return null;
+
+            MapObj spawned = overrides.spawnedByType(type);
+            if (spawned != null)
+                return spawned;
+        }
         MapDefinition mapdef = definitionRepository.get(MapDefinition.class, Tile.coordsToRegion(x, z)); // Can be null, don't want to operate on such.
         return mapdef == null ? null : mapdef.objByType(level, x & 63, z & 63, type);
     }
@@ -216,22 +248,15 @@ public class World {
     }
 
     public MapObj spawnObj(MapObj obj, boolean addClip) {
-        spawnedObjs.removeIf(o -> o.type() == obj.type() && o.tile().equals(obj.tile())); // TODO remove the clip of that obj
-        spawnedObjs.add(obj);
+        // Replaces a spawned or removed obj of the same type
+        objectOverrides.spawn(obj); // TODO remove the clip of that obj
 
         MapDefinition def = definitionRepository.get(MapDefinition.class, obj.tile().region());
         if (addClip && def != null) {
             def.clip(this, obj);
         }
-        // Remove any previously spawned obj
-        removedObjs.removeIf(o -> o.type() == obj.type() && o.tile().equals(obj.tile())); // TODO remove the clip of that obj
 
-        players.forEach(p -> {
-            if (p.activeArea().contains(obj.tile()) && Tile.sameH(p, obj)) {
-                p.write(new SetMapBase(p, obj.tile()));
-                p.write(new SpawnObject(obj));
-            }
-        });
+        chunkUpdates.spawnObject(obj);
         return obj;
     }
 
@@ -242,22 +267,14 @@ public class World {
     public void removeObj(MapObj obj, boolean removeClip) {
         if (obj == null || obj.tile() == null)
             return;
-        // Remove duplicates!
-        removedObjs.removeIf(o -> o == null || o.tile() == null || o.type() == obj.type() && o.tile().equals(obj.tile()));
-        removedObjs.add(obj);
+        // Replaces a spawned or removed obj of the same type
+        objectOverrides.remove(obj);
 
         MapDefinition def = definitionRepository.get(MapDefinition.class, obj.tile().region());
         if (removeClip && def != null)
             def.unclip(this, obj);
-        // Remove any previously spawned obj
-        spawnedObjs.removeIf(o -> o == null || o.tile() == null || o.type() == obj.type() && o.tile().equals(obj.tile()));
 
-        players.forEach(p -> {
-            if (p.activeArea().contains(obj.tile()) && Tile.sameH(p, obj)) {
-                p.write(new SetMapBase(p, obj.tile()));
-                p.write(new RemoveObject(obj));
-            }
-        });
+        chunkUpdates.removeObject(obj);
     }
     public GroundItem spawnGroundItem(GroundItem item) {
         // Nonstackable but more than 1?
@@ -272,33 +289,22 @@ public class World {
         /// Try to merge
         boolean updated = false;
         GroundItem newItem = item;
-        if (item.item().definition(this).stackable()) {
-            for (GroundItem g : groundItems) {
-                if (g.tile().equals(item.tile()) && g.item().id() == item.item().id() && (Objects.equals(g.owner(), item.owner()) || (g.owner() == null && item.owner() == null))) {
-                    if (!((long) g.item().amount() + (long) item.item().amount() > Integer.MAX_VALUE)) { // Amt becomes negative.
-                        g.item(new Item(g.item().id(), g.item().amount() + item.item().amount()));
-                        updated = true;
-                        newItem = g;
-                        break;
-                    }
-                }
+        boolean stackable = item.item().definition(this).stackable();
+        if (stackable) {
+            GroundItem g = groundItems.stack(item);
+            if (g != null && !((long) g.item().amount() + (long) item.item().amount() > Integer.MAX_VALUE)) { // Amt becomes negative.
+                g.item(new Item(g.item().id(), g.item().amount() + item.item().amount()));
+                updated = true;
+                newItem = g;
             }
         }
 
         if (!updated) {
-            groundItems.add(item);
+            // A full stack stays where it is, later drops stack onto this one
+            groundItems.add(item, stackable);
 
-            final GroundItem finalNewItem = newItem;
-            // Broadcast it.
-            players.forEach(p -> {
-                if (p.activeArea().contains(finalNewItem.tile()) && Tile.sameH(p, finalNewItem)) {
-                    // Is this an item for us?
-                    if (finalNewItem.owner() == null || p.id().equals(finalNewItem.owner()) || finalNewItem.broadcasted()) {
-                        p.write(new SetMapBase(p, finalNewItem.tile()));
-                        p.write(new AddGroundItem(finalNewItem));
-                    }
-                }
-            });
+            // Broadcast it, or show it to its owner only
+            chunkUpdates.addGroundItem(newItem, newItem.owner() == null || newItem.broadcasted());
         }
 
         return item;
@@ -318,6 +324,13 @@ public class World {
         return groundItems.contains(item);
     }
 
+    /**
+     * @return the ground item counts, formatted for logging.
+     */
+    public String groundItemSummary() {
+        return String.format("Ground items: %d, %d timers pending.", groundItems.size(), groundItems.timers());
+    }
+
     public Optional<Player> playerForId(Object id) {
         return Optional.ofNullable(playerLookupMap.get(id));
     }
@@ -380,6 +393,7 @@ public class World {
 
     public void unregisterNpc(Npc npc) {
         npcs.remove(npc);
+        TaskManager.clear(npc);
         npc.index(-1);
     }
 
@@ -402,6 +416,7 @@ public class World {
 
     public void unregisterPlayer(Player player) {
         players.remove(player);
+        TaskManager.clear(player);
         getPvpShuffablePid().remove(player);
         player.pvpPid = -1;
         playerLookupMap.remove(player.id());
@@ -437,18 +452,13 @@ public class World {
      */
     public void unregisterAll(Area area) {
         if (area == null) return;
-        List<Npc> npcsToRemove = npcs.stream().filter(Objects::nonNull).filter(area::contains).
-                collect(Collectors.toList());
-        npcsToRemove.forEach(npc -> {
+        npcs.forEachInArea(area, npc -> {
             npc.stopActions(true);
             unregisterNpc(npc);
         });
-        List<GroundItem> itemsToRemove = groundItems.stream().filter(Objects::nonNull).filter(item -> area.contains(item.tile())).
-                collect(Collectors.toList());
-        itemsToRemove.forEach(this::removeGroundItem);
+        groundItems.in(area).forEach(this::removeGroundItem);
 
-        spawnedObjs.removeIf(obj -> obj != null && area.contains(obj.tile()));
-        removedObjs.removeIf(obj -> obj != null && area.contains(obj.tile()));
+        objectOverrides.clear(area);
     }
 
     public boolean removeGroundItem(GroundItem item) {
@@ -459,14 +469,7 @@ public class World {
     }
 
     private void despawnItem(GroundItem item) {
-        players().forEach(p -> {
-            if (p.seesChunk(item.tile().x, item.tile().z) && Tile.sameH(p, item)) {
-                if (item.broadcasted() || p.id().equals(item.owner())) {
-                    p.write(new SetMapBase(p, item.tile()));
-                    p.write(new RemoveGroundItem(item));
-                }
-            }
-        });
+        chunkUpdates.removeGroundItem(item, item.broadcasted());
     }
 
     public EntityList<Player> getPvpShuffablePid() {
@@ -509,8 +512,7 @@ public class World {
         }
 
         // Fire timers
-        for (Iterator<Timer> it = timers.timers().iterator(); it.hasNext(); ) {
-            Timer entry = it.next();
+        for (Timer entry : timers.expired()) {
 
             if (entry != null && entry.ticks() < 1) {
                 TimerKey key = entry.key();
@@ -520,30 +522,18 @@ public class World {
             }
         }
 
-        // Ground items which need synching...
-        groundItems.stream().filter(g -> !g.broadcasted() && g.shouldBroadcast()).forEach(item -> {
+        // Ground items which need synching, then those which need removal
+        groundItems.cycle(item -> {
             item.broadcasted(true);
             item.forceBroadcast(false);
 
-            // See who's getting broadcasted!
-            players().forEach(p -> {
-                if (!p.bot() && !p.id().equals(item.owner()) && p.seesChunk(item.tile().x, item.tile().z) && Tile.sameH(p, item)) {
-                    p.write(new SetMapBase(p, item.tile()));
-                    p.write(new AddGroundItem(item));
-                }
-            });
+            // The owner saw it all along
+            chunkUpdates.broadcastGroundItem(item);
+        }, g -> {
+            this.despawnItem(g);
+            onDespawned(g, this);
         });
 
-        // Ground items which need removal..
-        for (Iterator<GroundItem> gi = groundItems.iterator(); gi.hasNext(); ) {
-            GroundItem g = gi.next();
-            if (g.shouldBeRemoved()) {
-                this.despawnItem(g);
-                onDespawned(g, this);
-                gi.remove();
-            }
-        }
-
         // System update
         if (ticksUntilSystemUpdate-- == 0) {
             players.forEach(p -> {
@@ -560,6 +550,20 @@ public class World {
         }
     }
 
+    /**
+     * Sends the object and ground item changes of this tick, one packet per changed chunk to each player seeing it.
+     */
+    public void flushChunkUpdates() {
+        chunkUpdates.flush(this::forEachPlayerNear);
+    }
+
+    /**
+     * @return the chunk update counts since the last call, formatted for logging.
+     */
+    public String chunkUpdateSummary() {
+        return chunkUpdates.summary();
+    }
+
     private EquipmentInfo equipmentInfo;
     public EquipmentInfo equipmentInfo() {
         return equipmentInfo;
@@ -575,13 +579,15 @@ public class World {
     }
 
     public List<MapObj> objByTile(int x, int z, int level) {
-        Optional<MapObj> removed = removedObjs.stream().filter(m -> m.tile().equals(x, z, level)).findAny();
-        if (removed.isPresent())
-            return null;
-
-        Optional<MapObj> spawned = spawnedObjs.stream().filter(m -> m.tile().equals(x, z, level)).findAny();
-        if (spawned.isPresent())
-            return Collections.singletonList(spawned.get());
+        ObjectOverrides.TileOverrides overrides = objectOverrides.at(x, z, level);
+        if (overrides != null) {
+            if (overrides.anyRemoved())
+                return null;
+
+            MapObj spawned = overrides.firstSpawned();
+            if (spawned != null)
+                return Collections.singletonList(spawned);
+        }
         MapDefinition mapdef = definitionRepository.get(MapDefinition.class, Tile.coordsToRegion(x, z)); // Can be null, don't want to operate on such.
         return mapdef == null ? null : mapdef.objs(level, x & 63, z & 63);
     }
@@ -591,13 +597,15 @@ public class World {
     }
 
     public MapObj objById(int id, int x, int z, int level) {
-        Optional<MapObj> removed = removedObjs.stream().filter(m -> m.id() == id && m.tile().equals(x, z, level)).findAny();
-        if (removed.isPresent())
-            return null;
-
-        Optional<MapObj> spawned = spawnedObjs.stream().filter(m -> m.id() == id && m.tile().equals(x, z, level)).findAny();
-        if (spawned.isPresent())
-            return spawned.get();
+        ObjectOverrides.TileOverrides overrides = objectOverrides.at(x, z, level);
+        if (overrides != null) {
+            if (overrides.removedById(id))
+                return null;
+
+            MapObj spawned = overrides.spawnedById(id);
+            if (spawned != null)
+                return spawned;
+        }
         MapDefinition mapdef = definitionRepository.get(MapDefinition.class, Tile.coordsToRegion(x, z)); // Can be null, don't want to operate on such.
         return mapdef == null ? null : mapdef.objById(level, x & 63, z & 63, id);
     }
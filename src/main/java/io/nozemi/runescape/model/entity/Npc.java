@@ -255,8 +255,7 @@ public class Npc extends Entity {
 	private void fire_timers() {
 		try {
 			timerloop:
-			for (Iterator<io.nozemi.runescape.script.Timer> it = timers.timers().iterator(); it.hasNext(); ) {
-				io.nozemi.runescape.script.Timer entry = it.next();
+			for (io.nozemi.runescape.script.Timer entry : timers.expired()) {
 				if (entry != null && entry.ticks() < 1) {
 					TimerKey key = entry.key();
 					int oldTicks, attemptsLeft = 10; // We cap attempts to 10 to avoid bugs. Lower for npcs because support for this is brand new as of 16/8/16 - unsure of performance effects
@@ -3,6 +3,7 @@ package io.nozemi.runescape.model.entity;
 import io.nozemi.runescape.model.Area;
 import io.nozemi.runescape.model.Entity;
 import io.nozemi.runescape.model.Tile;
+import io.nozemi.runescape.model.World;
 import io.nozemi.runescape.model.entity.player.Varps;
 import io.nozemi.runescape.model.map.steroids.Direction;
 import io.nozemi.runescape.util.Varp;
@@ -22,16 +23,19 @@ public class PathQueue {
 	private Varps varps;
 	
 	public void setDefaultLastStep() {
-		if ((entity.world().floorAt(entity.tile().transform(1, 0)) & 0x4) == 0) {
-			lastStep = entity.tile().transform(1, 0);
-		} else if ((entity.world().floorAt(entity.tile().transform(1, 1)) & 0x4) == 0) {
-			lastStep = entity.tile().transform(1, 1);
-		} else if ((entity.world().floorAt(entity.tile().transform(-1, 0)) & 0x4) == 0) {
-			lastStep = entity.tile().transform(-1, 0);
-		} else if ((entity.world().floorAt(entity.tile().transform(-1, -1)) & 0x4) == 0) {
-			lastStep = entity.tile().transform(-1, -1);
+		World world = entity.world();
+		Tile tile = entity.tile();
+		
+		if ((world.floorAt(tile.x + 1, tile.z, tile.level) & 0x4) == 0) {
+			lastStep = tile.transform(1, 0);
+		} else if ((world.floorAt(tile.x + 1, tile.z + 1, tile.level) & 0x4) == 0) {
+			lastStep = tile.transform(1, 1);
+		} else if ((world.floorAt(tile.x - 1, tile.z, tile.level) & 0x4) == 0) {
+			lastStep = tile.transform(-1, 0);
+		} else if ((world.floorAt(tile.x - 1, tile.z - 1, tile.level) & 0x4) == 0) {
+			lastStep = tile.transform(-1, -1);
 		} else {
-			lastStep = entity.tile();
+			lastStep = tile;
 		}
 	}
 	
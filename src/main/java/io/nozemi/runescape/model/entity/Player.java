@@ -694,8 +694,7 @@ public class Player extends Entity implements BeanFactoryAware {
     private void fireTimers() {
         try {
             timerloop:
-            for (Iterator<Timer> it = timers.timers().iterator(); it.hasNext(); ) {
-                Timer entry = it.next();
+            for (Timer entry : timers.expired()) {
                 if (entry != null && entry.ticks() < 1) {
                     TimerKey key = entry.key();
                     int oldTicks, attemptsLeft = 50; // We cap attempts to 50 to avoid bugs.
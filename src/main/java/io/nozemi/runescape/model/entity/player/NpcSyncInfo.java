@@ -20,6 +20,12 @@ public class NpcSyncInfo extends SyncInfo {
 	private int combatLevel;
 	public Player owner;
 	
+	/**
+	 * The update block every viewer without forced values gets this cycle. Encoded by whichever sync worker needs it
+	 * first, and dropped in {@link #clear()}.
+	 */
+	private volatile byte[] maskBlock;
+	
 	// Do this ONCE per update cycle instead of checking the enum attribute map multiple times (even tho EnumKeys are fast surely this is faster?)
 	public void updateAttributeMapFlags() {
 		super.updateUniversalAttribStates();
@@ -168,6 +174,70 @@ public class NpcSyncInfo extends SyncInfo {
 		return b;
 	}
 	
+	/**
+	 * @return the update block (mask and all flagged blocks) of this npc for the current cycle, encoded only once no
+	 * matter how many players see it.
+	 */
+	public byte[] maskBlock() {
+		byte[] block = maskBlock;
+		
+		if (block == null) {
+			RSBuffer buffer = new RSBuffer(Unpooled.buffer(32));
+			encodeMaskBlock(buffer, calculatedFlag, -1, null);
+			
+			block = new byte[buffer.get().readableBytes()];
+			buffer.get().readBytes(block);
+			maskBlock = block;
+		}
+		return block;
+	}
+	
+	/**
+	 * Writes the update block with the given mask, which may have more flags than were set on the npc, and with the
+	 * values forced for a specific viewer.
+	 *
+	 * @param forceEntity the face entity value to write instead of our own, or -1.
+	 * @param forceTile   the face tile to write instead of our own, or null.
+	 */
+	public void encodeMaskBlock(RSBuffer buffer, int mask, int forceEntity, Tile forceTile) {
+		buffer.writeByte(mask);
+		
+		if ((mask & Flag.GRAPHIC.value) != 0)
+			buffer.writeBytes(graphicSet);
+		
+		if (forceTile != null) {
+			buffer.writeShort(forceTile.x);
+			buffer.writeShortA(forceTile.z);
+		} else if ((mask & Flag.FACE_TILE.value) != 0)
+			buffer.writeBytes(facetile);
+		
+		if ((mask & Flag.HIT.value) != 0)
+			buffer.writeBytes(hitSet());
+		
+		if ((mask & Flag.TRANSMOG.value) != 0)
+			buffer.writeShortA(transmog <= 0 ? ((Npc) entity).id() : transmog);
+		
+		if (forceEntity != -1)
+			buffer.writeLEShort(forceEntity);
+		else if ((mask & Flag.FACE_ENTITY.value) != 0)
+			buffer.writeBytes(faceEntitySet);
+		
+		if ((mask & Flag.ANIMATION.value) != 0)
+			buffer.writeBytes(animationSet);
+		
+		if ((mask & Flag.SHOUT.value) != 0)
+			buffer.writeBytes(shout);
+		
+		if ((mask & Flag.COMBAT_LEVEL.value) != 0)
+			buffer.writeShort(combatLevel);
+	}
+	
+	@Override
+	public void clear() {
+		super.clear();
+		maskBlock = null;
+	}
+	
 	public enum Flag {
 		HIT(0x40),
 		FACE_ENTITY(0x10),
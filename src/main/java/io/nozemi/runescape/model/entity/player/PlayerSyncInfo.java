@@ -8,8 +8,10 @@ import io.nozemi.runescape.model.*;
 import io.nozemi.runescape.model.entity.Player;
 import io.nozemi.runescape.model.entity.SyncInfo;
 import io.nozemi.runescape.util.HuffmanCodec;
+import io.nozemi.runescape.util.Varp;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Created by Bart Pelle on 8/23/2014.
@@ -50,6 +52,12 @@ public class PlayerSyncInfo extends SyncInfo {
 	private boolean ready = false;
 	public boolean publicChatDampered;
 	
+	/**
+	 * Encoded mask blocks of this player for the current cycle, one per {@link #maskBlock(boolean, ChatVariant)} variant.
+	 * Filled lazily by whichever sync worker needs a variant first, and dropped in {@link #clear()}.
+	 */
+	private final AtomicReferenceArray<byte[]> maskBlocks = new AtomicReferenceArray<>(2 * ChatVariant.values().length);
+	
 	/**
 	 * This value is held in our players AttributeKey set, but this direct referenced is updated pre-cycle ot save having to use the map.
 	 */
@@ -250,6 +258,10 @@ public class PlayerSyncInfo extends SyncInfo {
 	}
 	
 	public void forceMove(Player viewer, RSBuffer buffer) {
+		writeForceMove(buffer);
+	}
+	
+	private void writeForceMove(RSBuffer buffer) {
 		buffer.writeByteA(cachedMove.dx1);
 		buffer.writeByteS(cachedMove.dz1);
 		buffer.writeByteA(cachedMove.dx2);
@@ -394,8 +406,104 @@ public class PlayerSyncInfo extends SyncInfo {
 		return b;
 	}
 	
+	/**
+	 * @param viewer the player the mask block is being written for.
+	 * @return which version of our public chat the viewer gets to see.
+	 */
+	public ChatVariant chatVariantFor(Player viewer) {
+		if (!hasFlag(Flag.CHAT.value) || (publicChatDampered && viewer != entity))
+			return ChatVariant.HIDDEN;
+		
+		if (viewer.varps().varp(Varp.PROFANITY) == 0 && censoredPublicChatBlock != null)
+			return ChatVariant.CENSORED;
+		
+		return ChatVariant.PLAIN;
+	}
+	
+	/**
+	 * The complete update block (mask and all flagged blocks) of this player for the current cycle. Every variant is
+	 * encoded only once per cycle, no matter how many players see it.
+	 *
+	 * @param newlyAdded whether the viewer just added us to its local list, which forces the looks block.
+	 * @param chat       the chat version the viewer gets to see, see {@link #chatVariantFor(Player)}.
+	 */
+	public byte[] maskBlock(boolean newlyAdded, ChatVariant chat) {
+		int slot = (newlyAdded ? ChatVariant.values().length : 0) + chat.ordinal();
+		byte[] block = maskBlocks.get(slot);
+		
+		if (block == null) {
+			block = encodeMaskBlock(newlyAdded, chat);
+			maskBlocks.set(slot, block);
+		}
+		return block;
+	}
+	
+	private byte[] encodeMaskBlock(boolean newlyAdded, ChatVariant chat) {
+		RSBuffer buffer = new RSBuffer(Unpooled.buffer(64));
+		int mask = calculatedFlag;
+		
+		if (newlyAdded)
+			mask |= Flag.LOOKS.value;
+		
+		// Surpress their message, if its not us.
+		if (chat == ChatVariant.HIDDEN)
+			mask &= ~Flag.CHAT.value;
+		
+		if (mask >> 8 != 0) {
+			mask |= 0x80;
+		}
+		
+		buffer.writeByte(mask);
+		
+		if (mask >> 8 != 0) {
+			buffer.writeByte(mask >> 8);
+		}
+		
+		if (hasFlag(Flag.TELEPORT_MODE.value))
+			buffer.writeByteS(teleportMode);
+		
+		if (hasFlag(Flag.SHOUT.value))
+			buffer.get().writeBytes(shout);
+		
+		if (hasFlag(Flag.GRAPHIC.value))
+			buffer.get().writeBytes(graphicSet);
+		
+		if (hasFlag(Flag.PREFIX_NAME_SUFFIX.value))
+			buffer.get().writeBytes(tripleStrings);
+		
+		if (hasFlag(Flag.ANIMATION.value))
+			buffer.get().writeBytes(animationSet);
+		
+		if ((mask & Flag.CHAT.value) != 0)
+			buffer.get().writeBytes(chat == ChatVariant.CENSORED ? censoredPublicChatBlock : publicChatBlock);
+		
+		if (hasFlag(Flag.MOVEMENT_MODE.value))
+			buffer.writeByteS(movementMode);
+		
+		if (hasFlag(Flag.HIT.value))
+			buffer.get().writeBytes(hitSet());
+		
+		if (hasFlag(Flag.FORCE_MOVE.value))
+			writeForceMove(buffer);
+		
+		if (hasFlag(Flag.FACE_ENTITY.value))
+			buffer.get().writeBytes(faceEntitySet);
+		
+		if (hasFlag(Flag.LOOKS.value) || newlyAdded)
+			buffer.get().writeBytes(looksBlock);
+		
+		if (hasFlag(Flag.FACE_TILE.value))
+			buffer.get().writeShort(((Player) entity).remoteLocation().angleTo(facedTile));
+		
+		byte[] block = new byte[buffer.get().readableBytes()];
+		buffer.get().readBytes(block);
+		return block;
+	}
+	
 	public void clear() {
 		super.clear();
+		for (int i = 0; i < maskBlocks.length(); i++)
+			maskBlocks.set(i, null);
 		playerUpdateReqPtr = 0;
 		newlyAddedPtr = 0;
 		npcUpdateReqPtr = 0;
@@ -442,6 +550,13 @@ public class PlayerSyncInfo extends SyncInfo {
 		HIDE_ALL_NPCS = entity.attribOr(AttributeKey.NO_GPI, false);
 	}
 	
+	/**
+	 * The versions of a public chat message a viewer can be sent.
+	 */
+	public enum ChatVariant {
+		HIDDEN, PLAIN, CENSORED
+	}
+	
 	public enum Flag {
 		LOOKS(0x4),
 		ANIMATION(0x20),
@@ -19,8 +19,10 @@ public class Varps {
 		}
 	}
 	
+	public static final int SIZE = 2000;
+	
 	private Player player;
-	private int[] varps = new int[2000];
+	private int[] varps = new int[SIZE];
 	
 	public Varps(Player player) {
 		this.player = player;
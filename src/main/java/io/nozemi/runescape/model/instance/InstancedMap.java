@@ -131,9 +131,7 @@ public class InstancedMap extends Area {
 			// TODO: 3/28/2016 See if it's possible to use arraycopy to gain speed..?
 			for (int lx = 0; lx < 8; lx++) {
 				for (int lz = 0; lz < 8; lz++) {
-					if (source.getMasks() != null && source.getMasks()[copy.level] != null) {
-						target.getMasks()[level][(destX + lx) & 63][(destZ + lz) & 63] = source.getMasks()[copy.level][(copy.x + lx) & 63][(copy.z + lz) & 63];
-					}
+					target.setMask(level, (destX + lx) & 63, (destZ + lz) & 63, source.mask(copy.level, (copy.x + lx) & 63, (copy.z + lz) & 63));
 					
 					if (source.getObjs() != null && source.getObjs()[copy.level] != null) {
 						
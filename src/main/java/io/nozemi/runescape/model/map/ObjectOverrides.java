@@ -0,0 +1,209 @@
+package io.nozemi.runescape.model.map;
+
+import io.nozemi.runescape.model.Area;
+import io.nozemi.runescape.model.Tile;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.util.function.Consumer;
+
+/**
+ * Objects spawned on or removed from the map at runtime, on top of the objects the map definitions hold. Per tile there
+ * is at most one override of each object type: spawning or removing an object replaces whatever override of its type
+ * the tile had. Tiles are found by their packed coordinates, and grouped per 8x8 chunk so sending the overrides of a
+ * chunk only looks at that chunk.
+ */
+public class ObjectOverrides {
+
+	private final Int2ObjectOpenHashMap<TileOverrides> tiles = new Int2ObjectOpenHashMap<>();
+	private final Int2ObjectOpenHashMap<ObjectArrayList<TileOverrides>> chunks = new Int2ObjectOpenHashMap<>();
+
+	private int spawnedCount;
+	private int removedCount;
+
+	public void spawn(MapObj obj) {
+		tile(obj.tile()).set(obj, false);
+	}
+
+	public void remove(MapObj obj) {
+		tile(obj.tile()).set(obj, true);
+	}
+
+	/**
+	 * @return the overrides of the tile, or null if it has none.
+	 */
+	public TileOverrides at(int x, int z, int level) {
+		return tiles.get(tileKey(x, z, level));
+	}
+
+	/**
+	 * Passes the spawned or removed objects lying in the area, on any level, to the consumer. Only the chunks the area
+	 * overlaps are looked at.
+	 */
+	public void forEachIn(Area area, boolean removed, Consumer<MapObj> consumer) {
+		for (int cx = area.x1 >> 3; cx <= area.x2 >> 3; cx++) {
+			for (int cz = area.z1 >> 3; cz <= area.z2 >> 3; cz++) {
+				ObjectArrayList<TileOverrides> chunk = chunks.get(chunkKey(cx, cz));
+				if (chunk == null)
+					continue;
+
+				for (TileOverrides tile : chunk) {
+					if (area.contains(tile.tile)) {
+						(removed ? tile.removed : tile.spawned).forEach(consumer);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops every override in the area, on any level.
+	 */
+	public void clear(Area area) {
+		long chunkCount = (long) ((area.x2 >> 3) - (area.x1 >> 3) + 1) * ((area.z2 >> 3) - (area.z1 >> 3) + 1);
+		if (chunkCount > chunks.size()) {
+			// Larger than everything we hold, walk the tiles instead of the chunks
+			ObjectArrayList<TileOverrides> inArea = new ObjectArrayList<>();
+			for (TileOverrides tile : tiles.values()) {
+				if (area.contains(tile.tile))
+					inArea.add(tile);
+			}
+			inArea.forEach(this::drop);
+			return;
+		}
+
+		for (int cx = area.x1 >> 3; cx <= area.x2 >> 3; cx++) {
+			for (int cz = area.z1 >> 3; cz <= area.z2 >> 3; cz++) {
+				ObjectArrayList<TileOverrides> chunk = chunks.get(chunkKey(cx, cz));
+				if (chunk == null)
+					continue;
+
+				for (TileOverrides tile : chunk.toArray(new TileOverrides[0])) {
+					if (area.contains(tile.tile))
+						drop(tile);
+				}
+			}
+		}
+	}
+
+	public int spawnedCount() {
+		return spawnedCount;
+	}
+
+	public int removedCount() {
+		return removedCount;
+	}
+
+	private TileOverrides tile(Tile tile) {
+		int key = tileKey(tile.x, tile.z, tile.level);
+		TileOverrides overrides = tiles.get(key);
+		if (overrides == null) {
+			overrides = new TileOverrides(tile);
+			tiles.put(key, overrides);
+
+			int chunkKey = chunkKey(tile.x >> 3, tile.z >> 3);
+			ObjectArrayList<TileOverrides> chunk = chunks.get(chunkKey);
+			if (chunk == null)
+				chunks.put(chunkKey, chunk = new ObjectArrayList<>(4));
+			chunk.add(overrides);
+		}
+		return overrides;
+	}
+
+	private void drop(TileOverrides tile) {
+		tiles.remove(tileKey(tile.tile.x, tile.tile.z, tile.tile.level));
+		spawnedCount -= tile.spawned.size();
+		removedCount -= tile.removed.size();
+
+		int key = chunkKey(tile.tile.x >> 3, tile.tile.z >> 3);
+		ObjectArrayList<TileOverrides> chunk = chunks.get(key);
+		chunk.remove(tile);
+		if (chunk.isEmpty())
+			chunks.remove(key);
+	}
+
+	private static int tileKey(int x, int z, int level) {
+		return (level << 28) | ((x & 0x3FFF) << 14) | (z & 0x3FFF);
+	}
+
+	private static int chunkKey(int chunkX, int chunkZ) {
+		return ((chunkX & 0x7FF) << 11) | (chunkZ & 0x7FF);
+	}
+
+	/**
+	 * The objects spawned on and removed from a single tile, each list in the order they were set.
+	 */
+	public final class TileOverrides {
+
+		private final Tile tile;
+		private final ObjectArrayList<MapObj> spawned = new ObjectArrayList<>(1);
+		private final ObjectArrayList<MapObj> removed = new ObjectArrayList<>(1);
+
+		private TileOverrides(Tile tile) {
+			this.tile = tile;
+		}
+
+		private void set(MapObj obj, boolean remove) {
+			spawnedCount -= removeType(spawned, obj.type());
+			removedCount -= removeType(removed, obj.type());
+
+			if (remove) {
+				removed.add(obj);
+				removedCount++;
+			} else {
+				spawned.add(obj);
+				spawnedCount++;
+			}
+		}
+
+		/**
+		 * @return the spawned object of the type, or null if none is.
+		 */
+		public MapObj spawnedByType(int type) {
+			return find(spawned, type, -1);
+		}
+
+		public boolean removedByType(int type) {
+			return find(removed, type, -1) != null;
+		}
+
+		public MapObj spawnedById(int id) {
+			return find(spawned, -1, id);
+		}
+
+		public boolean removedById(int id) {
+			return find(removed, -1, id) != null;
+		}
+
+		/**
+		 * @return the object spawned first, or null if none is.
+		 */
+		public MapObj firstSpawned() {
+			return spawned.isEmpty() ? null : spawned.get(0);
+		}
+
+		public boolean anyRemoved() {
+			return !removed.isEmpty();
+		}
+
+		private MapObj find(ObjectArrayList<MapObj> objs, int type, int id) {
+			for (int i = 0; i < objs.size(); i++) {
+				MapObj obj = objs.get(i);
+				if ((type == -1 || obj.type() == type) && (id == -1 || obj.id() == id))
+					return obj;
+			}
+			return null;
+		}
+
+		private int removeType(ObjectArrayList<MapObj> objs, int type) {
+			for (int i = 0; i < objs.size(); i++) {
+				if (objs.get(i).type() == type) {
+					objs.remove(i);
+					return 1; // There never is more than one of a type
+				}
+			}
+			return 0;
+		}
+	}
+
+}
@@ -6,6 +6,7 @@ package io.nozemi.runescape.model.map;
 
 import io.nozemi.runescape.fs.DefinitionRepository;
 import io.nozemi.runescape.fs.MapDefinition;
+import io.nozemi.runescape.model.map.steroids.CollisionMap;
 
 /**
  * Walking route finder working on third flag range, designed for walking
@@ -554,11 +555,10 @@ public class WalkRouteFinder {
 				{
 					MapDefinition mapdef = repo.get(MapDefinition.class, (transmitRegionX << 8) | transmitRegionY);
 					if (mapdef != null) {
-						int[][] masks = mapdef.getMasks()[z];// map.getMasks()[z];
+						CollisionMap collision = repo.collision();
 						for (int fillX = startX; fillX < endX; fillX++) {
-							//System.arraycopy(masks[fillX & 0x3F], startY & 0x3F, clip[fillX - graphBaseX], startY - graphBaseY, (endY - startY) & 0x3F);
 							for (int fillY = startY; fillY < endY; fillY++) {
-								clip[fillX - graphBaseX][fillY - graphBaseY] = masks[fillX & 0x3F][fillY & 0x3F];
+								clip[fillX - graphBaseX][fillY - graphBaseY] = collision.clipAt(fillX, fillY, z);
 							}
 						}
 					}
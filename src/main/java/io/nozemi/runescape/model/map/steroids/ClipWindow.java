@@ -0,0 +1,200 @@
+package io.nozemi.runescape.model.map.steroids;
+
+import io.nozemi.runescape.fs.MapDefinition;
+import io.nozemi.runescape.model.World;
+
+import static io.nozemi.runescape.model.map.steroids.PathRouteFinder.unsafe;
+
+/**
+ * Off-heap copy of the clip masks in a 128x128 window, stored column by column the way {@link PathRouteFinder} reads
+ * them. Windows outlive the finders using them (see {@link RouteFinderMemory}), so consecutive finders around the same
+ * spot reuse the copy: a move shifts the retained part in place and only fills the strips it uncovered, and regions
+ * are only copied again when their {@link MapDefinition#getModCount() modification counter} changed.
+ */
+final class ClipWindow {
+
+	private static final int SIZE = 128;
+	private static final int SPAN = 3; // Regions a window can touch along one axis
+
+	final long address;
+
+	private boolean valid;
+	private int originX; // Absolute coordinates of column/row 0
+	private int originZ;
+	private int level;
+
+	// The regions the window covers, as of its last refresh
+	private int regionX;
+	private int regionZ;
+	private final MapDefinition[] regions = new MapDefinition[SPAN * SPAN];
+	private final int[] modCounts = new int[SPAN * SPAN];
+
+	ClipWindow(long address) {
+		this.address = address;
+	}
+
+	/**
+	 * Makes sure the window holds up to date masks around the tile. A window already within the given distance of it on
+	 * the same level is kept where it is; otherwise it is moved to be centered on the tile.
+	 */
+	void center(World world, int x, int z, int level, int slack) {
+		if (!valid || this.level != level || Math.abs(centerX() - x) > slack || Math.abs(centerZ() - z) > slack) {
+			int ox = x - SIZE / 2;
+			int oz = z - SIZE / 2;
+
+			if (!valid || this.level != level || Math.abs(ox - originX) >= SIZE || Math.abs(oz - originZ) >= SIZE) {
+				this.level = level;
+				moveTo(ox, oz);
+				fill(world, ox, oz, ox + SIZE - 1, oz + SIZE - 1);
+				capture(world);
+				valid = true;
+				return;
+			}
+
+			shift(world, ox, oz);
+		}
+
+		refreshModified(world);
+	}
+
+	/**
+	 * @return the absolute x coordinate the window is centered on.
+	 */
+	int centerX() {
+		return originX + SIZE / 2;
+	}
+
+	int centerZ() {
+		return originZ + SIZE / 2;
+	}
+
+	int level() {
+		return level;
+	}
+
+	boolean valid() {
+		return valid;
+	}
+
+	/**
+	 * Moves the origin, keeping the masks both windows share and filling the rest.
+	 */
+	private void shift(World world, int ox, int oz) {
+		refreshModified(world); // Bring what we keep up to date while it is still at the old origin
+
+		int dx = ox - originX;
+		int dz = oz - originZ;
+		int keep = SIZE - Math.abs(dz);
+
+		// Column by column in the direction that never overwrites a column still to be read. Within a column the
+		// source and destination may overlap, which Unsafe.copyMemory handles like memmove.
+		for (int n = 0; n < SIZE - Math.abs(dx); n++) {
+			int col = dx >= 0 ? n : SIZE - 1 - n;
+			long src = column(col + dx) + Integer.BYTES * Math.max(dz, 0);
+			long dst = column(col) + Integer.BYTES * Math.max(-dz, 0);
+			unsafe.copyMemory(src, dst, (long) Integer.BYTES * keep);
+		}
+
+		moveTo(ox, oz);
+
+		// Uncovered columns over the full height, then uncovered rows over the remaining width
+		int x1 = originX, x2 = originX + SIZE - 1;
+		if (dx > 0) {
+			fill(world, originX + SIZE - dx, originZ, x2, originZ + SIZE - 1);
+			x2 -= dx;
+		} else if (dx < 0) {
+			fill(world, originX, originZ, originX - dx - 1, originZ + SIZE - 1);
+			x1 -= dx;
+		}
+
+		if (dz > 0)
+			fill(world, x1, originZ + SIZE - dz, x2, originZ + SIZE - 1);
+		else if (dz < 0)
+			fill(world, x1, originZ, x2, originZ - dz - 1);
+
+		capture(world);
+	}
+
+	/**
+	 * Copies the masks of every covered region whose definition changed since the window last saw it.
+	 */
+	private void refreshModified(World world) {
+		for (int rx = 0; rx < SPAN; rx++) {
+			for (int rz = 0; rz < SPAN; rz++) {
+				int slot = rx * SPAN + rz;
+				int absRx = regionX + rx;
+				int absRz = regionZ + rz;
+				if (absRx << 6 > originX + SIZE - 1 || absRz << 6 > originZ + SIZE - 1)
+					continue;
+
+				MapDefinition def = region(world, absRx, absRz);
+				if (def != regions[slot] || (def != null && def.getModCount() != modCounts[slot])) {
+					fill(world, Math.max(originX, absRx << 6), Math.max(originZ, absRz << 6),
+							Math.min(originX + SIZE - 1, (absRx << 6) + 63), Math.min(originZ + SIZE - 1, (absRz << 6) + 63));
+					regions[slot] = def;
+					modCounts[slot] = def == null ? 0 : def.getModCount();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remembers which definitions, at which modification, the window currently reflects.
+	 */
+	private void capture(World world) {
+		for (int rx = 0; rx < SPAN; rx++) {
+			for (int rz = 0; rz < SPAN; rz++) {
+				MapDefinition def = region(world, regionX + rx, regionZ + rz);
+				regions[rx * SPAN + rz] = def;
+				modCounts[rx * SPAN + rz] = def == null ? 0 : def.getModCount();
+			}
+		}
+	}
+
+	/**
+	 * Copies the masks of the absolute rectangle (inclusive) into the window, marking tiles of missing regions blocked.
+	 */
+	private void fill(World world, int x1, int z1, int x2, int z2) {
+		for (int rx = x1 >> 6; rx <= x2 >> 6; rx++) {
+			int fromX = Math.max(x1, rx << 6);
+			int toX = Math.min(x2, (rx << 6) + 63);
+
+			for (int rz = z1 >> 6; rz <= z2 >> 6; rz++) {
+				int fromZ = Math.max(z1, rz << 6);
+				int toZ = Math.min(z2, (rz << 6) + 63);
+				MapDefinition def = region(world, rx, rz);
+
+				if (def != null) {
+					CollisionMap collision = world.definitions().collision();
+					for (int x = fromX; x <= toX; x++) {
+						long col = column(x - originX) + Integer.BYTES * (fromZ - originZ);
+						collision.copyColumn((rx << 8) | rz, level, x & 0x3F, fromZ & 0x3F, toZ - fromZ + 1, col);
+					}
+				} else {
+					for (int x = fromX; x <= toX; x++) {
+						long col = column(x - originX) + Integer.BYTES * (fromZ - originZ);
+						unsafe.setMemory(col, (long) Integer.BYTES * (toZ - fromZ + 1), (byte) 0xFF);
+					}
+				}
+			}
+		}
+	}
+
+	private void moveTo(int ox, int oz) {
+		originX = ox;
+		originZ = oz;
+		regionX = ox >> 6;
+		regionZ = oz >> 6;
+	}
+
+	private long column(int x) {
+		return address + (long) Integer.BYTES * SIZE * x;
+	}
+
+	private static MapDefinition region(World world, int rx, int rz) {
+		if (rx < 0 || rz < 0 || rx > 0xFF || rz > 0xFF)
+			return null;
+		return world.definitions().get(MapDefinition.class, (rx << 8) | rz);
+	}
+
+}
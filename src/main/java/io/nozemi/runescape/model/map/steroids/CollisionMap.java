@@ -0,0 +1,190 @@
+package io.nozemi.runescape.model.map.steroids;
+
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import static io.nozemi.runescape.model.map.steroids.PathRouteFinder.unsafe;
+
+/**
+ * The clip flags of the whole world, off-heap. The world is 256x256 regions of 4 levels by 64x64 tiles, but only regions
+ * that ever had a flag set get memory: one block per region, laid out level, x, z so a column of 64 tiles is contiguous.
+ * Tiles of regions without a block read as 0.
+ * <p>
+ * Reads are plain memory loads without allocation, and can happen from any thread. Writes come from the world thread
+ * (map loading, object spawns) and instance setup.
+ */
+public class CollisionMap {
+
+	public static final int REGION_BYTES = 4 * 64 * 64 * Integer.BYTES;
+
+	private static final long BUFFER_ADDRESS = bufferAddressOffset();
+
+	private final long[] regions = new long[256 * 256];
+	private int allocated;
+
+	/**
+	 * Called once for every region that is read before it has flags, to give lazily loaded maps a chance to load.
+	 * Null when all maps are loaded up front.
+	 */
+	private final IntConsumer loader;
+	private final boolean[] probed;
+
+	// Blocks that point into a mapped snapshot rather than allocated memory, and the mappings keeping them valid
+	private final boolean[] mapped = new boolean[256 * 256];
+	private final List<MappedByteBuffer> mappings = new ArrayList<>();
+
+	public CollisionMap(IntConsumer loader) {
+		this.loader = loader;
+		this.probed = loader == null ? null : new boolean[256 * 256];
+	}
+
+	/**
+	 * @return the clip flags at the tile, or 0 if it lies outside the map or in a region without flags.
+	 */
+	public int clipAt(int x, int z, int level) {
+		if (((x | z) & ~0x3FFF) != 0 || (level & ~3) != 0)
+			return 0;
+
+		int region = ((x >> 6) << 8) | (z >> 6);
+		long block = regions[region];
+		if (block == 0) {
+			if (loader == null || probed[region])
+				return 0;
+
+			probed[region] = true;
+			loader.accept(region);
+			if ((block = regions[region]) == 0)
+				return 0;
+		}
+		return unsafe.getInt(block + offset(level, x & 63, z & 63));
+	}
+
+	/**
+	 * @return the clip flags of the tile at the local coordinates of the region.
+	 */
+	public int get(int region, int level, int localX, int localZ) {
+		long block = regions[region];
+		return block == 0 ? 0 : unsafe.getInt(block + offset(level, localX, localZ));
+	}
+
+	public void set(int region, int level, int localX, int localZ, int flags) {
+		unsafe.putInt(block(region) + offset(level, localX, localZ), flags);
+	}
+
+	public void add(int region, int level, int localX, int localZ, int flags) {
+		long address = block(region) + offset(level, localX, localZ);
+		unsafe.putInt(address, unsafe.getInt(address) | flags);
+	}
+
+	public void remove(int region, int level, int localX, int localZ, int flags) {
+		long address = block(region) + offset(level, localX, localZ);
+		unsafe.putInt(address, unsafe.getInt(address) & ~flags);
+	}
+
+	/**
+	 * Copies a run of flags along z out of one column of a region, for bulk readers like the route finders.
+	 *
+	 * @param dest  address to copy the flags to, as consecutive ints.
+	 * @param count number of tiles, at most 64 - localZ.
+	 */
+	public void copyColumn(int region, int level, int localX, int localZ, int count, long dest) {
+		long block = regions[region];
+		if (block == 0)
+			unsafe.setMemory(dest, (long) count * Integer.BYTES, (byte) 0);
+		else
+			unsafe.copyMemory(block + offset(level, localX, localZ), dest, (long) count * Integer.BYTES);
+	}
+
+	/**
+	 * Drops all flags of the region and frees its memory.
+	 */
+	public synchronized void clear(int region) {
+		long block = regions[region];
+		if (block != 0) {
+			regions[region] = 0;
+			if (mapped[region]) {
+				mapped[region] = false;
+			} else {
+				unsafe.freeMemory(block);
+				allocated--;
+			}
+		}
+	}
+
+	/**
+	 * Copies the flags of the region into the array of {@link #REGION_BYTES} bytes.
+	 *
+	 * @return false if the region has no flags.
+	 */
+	public boolean export(int region, byte[] dest) {
+		long block = regions[region];
+		if (block == 0)
+			return false;
+
+		unsafe.copyMemory(null, block, dest, unsafe.arrayBaseOffset(byte[].class), REGION_BYTES);
+		return true;
+	}
+
+	/**
+	 * Uses the flags stored in a mapping for the regions, instead of allocating memory for them. The mapping should be
+	 * private, so later clipping changes stay in memory.
+	 *
+	 * @param offsets per region, where its {@link #REGION_BYTES} bytes of flags start in the mapping.
+	 */
+	public synchronized void map(MappedByteBuffer mapping, int[] regions, long[] offsets) {
+		long base = unsafe.getLong(mapping, BUFFER_ADDRESS);
+		mappings.add(mapping);
+
+		for (int i = 0; i < regions.length; i++) {
+			clear(regions[i]);
+			this.regions[regions[i]] = base + offsets[i];
+			mapped[regions[i]] = true;
+		}
+	}
+
+	/**
+	 * @return the number of regions holding flags.
+	 */
+	public int allocatedRegions() {
+		return allocated;
+	}
+
+	/**
+	 * @return the off-heap bytes used by the flags.
+	 */
+	public long nativeBytes() {
+		return (long) allocated * REGION_BYTES;
+	}
+
+	private long block(int region) {
+		long block = regions[region];
+		return block != 0 ? block : allocate(region);
+	}
+
+	private synchronized long allocate(int region) {
+		long block = regions[region];
+		if (block == 0) {
+			block = unsafe.allocateMemory(REGION_BYTES);
+			unsafe.setMemory(block, REGION_BYTES, (byte) 0);
+			regions[region] = block;
+			allocated++;
+		}
+		return block;
+	}
+
+	private static long bufferAddressOffset() {
+		try {
+			return unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+		} catch (NoSuchFieldException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long offset(int level, int localX, int localZ) {
+		return (long) ((level << 12) | (localX << 6) | localZ) << 2;
+	}
+
+}
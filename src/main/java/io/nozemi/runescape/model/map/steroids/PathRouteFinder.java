@@ -1,11 +1,11 @@
 package io.nozemi.runescape.model.map.steroids;
 
-import io.nozemi.runescape.fs.MapDefinition;
 import io.nozemi.runescape.model.Entity;
 import io.nozemi.runescape.model.Tile;
 import io.nozemi.runescape.model.World;
 import sun.misc.Unsafe;
 
+import java.lang.ref.Cleaner;
 import java.lang.reflect.Field;
 import java.util.LinkedList;
 
@@ -14,6 +14,7 @@ import static io.nozemi.runescape.model.map.steroids.Clip.*;
 public class PathRouteFinder implements RouteFinder {
 	
 	static final Unsafe unsafe = getTheUnsafe();
+	private static final Cleaner cleaner = Cleaner.create();
 	static final int ALT_RADIUS = 10;
 	static final int RECENTER_DISTANCE = 24; //Increasing improves performance but may make it not calculate some very long paths sometimes
 	
@@ -37,60 +38,52 @@ public class PathRouteFinder implements RouteFinder {
 		final long queueY;
 		
 		public Offsets() {
-			parent = unsafe.allocateMemory(MEMSIZE);
+			parent = RouteFinderMemory.allocate(MEMSIZE);
 			cost = parent + 128 * 128;
 			queueX = cost + Short.BYTES * 128 * 128;
 			queueY = queueX + 1024;
 			unsafe.setMemory(parent, 128, (byte) -1); //Clear left border
 			unsafe.setMemory(parent + 128 * 127, 128, (byte) -1); //Clear right border
-		}
-		
-		@Override
-		protected void finalize() throws Throwable {
-			super.finalize();
-			//TODO: Move to logout or other appropriate place
-			unsafe.freeMemory(parent);
+			
+			// Freed once the owning thread is gone, the action must not reference this
+			long address = parent;
+			cleaner.register(this, () -> RouteFinderMemory.free(address, MEMSIZE));
 		}
 		
 	}
 	
 	private static final ThreadLocal<Offsets> offsets = ThreadLocal.withInitial(() -> new Offsets());
-	private final long flags = unsafe.allocateMemory(Integer.BYTES * 128 * 128 + 500_000);
+	private final ClipWindow window;
+	private final long flags;
 	private boolean freed;
 	
-	@Override
-	protected void finalize() throws Throwable {
-		super.finalize();
-		//TODO: Move to logout or other appropriate place
-		free();
-	}
-	
 	private int loadedX;
 	private int loadedY;
 	private int loadedZ;
-	private int loadedCycle;
 	private int routeX;//TODO: remove, do via route request target
 	private int routeY;
 	private Tile entity;
 	private final World world;
-	private boolean valid = false;
 	
 	public PathRouteFinder(Entity entity) {
-		this.entity = entity.tile();
-		this.world = entity.world();
-		recenter();
+		this(entity.tile(), entity.world());
 	}
 	
 	public PathRouteFinder(Tile tile, World world) {
 		this.entity = tile;
 		this.world = world;
+		this.window = RouteFinderMemory.acquire(tile.x, tile.z, tile.level);
+		this.flags = window.address;
 		recenter();
 	}
 	
+	/**
+	 * Hands the flag memory back to the pool. Must be called once the finder is no longer used.
+	 */
 	public void free() {
 		if (!freed) {
 			freed = true;
-			unsafe.freeMemory(flags);
+			RouteFinderMemory.release(window);
 		}
 	}
 	
@@ -110,54 +103,14 @@ public class PathRouteFinder implements RouteFinder {
 	}
 	
 	/**
-	 * Synchronize and re-center the flags array if needed
+	 * Synchronize and re-center the flags array if needed. The window may stay up to {@link #RECENTER_DISTANCE} off
+	 * center, everything reading it goes through the loaded coordinates.
 	 */
 	private final void recenter() {
-		final int fx = entity.x - 64;
-		final int tx = entity.x + 64;
-		final int fy = entity.z - 64;
-		final int ty = entity.z + 64;
-		boolean invalidated = true;
-		/*invalidate: for (int rx = fx >> 6; rx <= tx >> 6; rx++) {
-			for (int ry = fy >> 6; ry <= ty >> 6; ry++) {
-				if (World.reference(rx, ry).lastModified > loadedCycle) {
-					invalidated = true;
-					break invalidate;
-				}
-			}
-		}*/
-		if (Math.abs(loadedX - entity.x) > RECENTER_DISTANCE || Math.abs(loadedY - entity.z) > RECENTER_DISTANCE || !valid || loadedZ != entity.level) {
-			invalidated = false;
-			valid = true;
-			loadedX = entity.x;
-			loadedY = entity.z;
-			loadedZ = entity.level;
-			for (int rx = fx >> 6; rx <= tx >> 6; rx++) {
-				int toX = Math.min(entity.x, (rx << 6)) + 63;
-				for (int ry = fy >> 6; ry <= ty >> 6; ry++) {
-					int toY = Math.min(entity.z, (ry << 6)) + 63;
-					//It will already have been loaded
-					final MapDefinition reference = world.definitions().get(MapDefinition.class, (rx << 8) | ry);//World.reference(rx, ry);
-					if (reference != null) {
-						int[][] plane = reference.getMasks()[entity.level];
-						//TODO: Maybe we need to keep a Map<Region, Integer> and use a modCount istead of lastModified because this is still not 100% but solves 99+% of caching issues
-						//Region A could change, then we synchronize mid cycle for whatever, then region B changes in the same cycle. we miss the update until something else happens
-						loadedCycle = 0;//Math.max(reference.lastModified, loadedCycle);
-						for (int x = Math.max(entity.x - 64, rx << 6); x <= toX; x++) {
-							for (int y = Math.max(entity.z - 64, ry << 6); y <= toY; y++) {
-								unsafe.putInt(flags + i(x - entity.x + 64, y - entity.z + 64), plane[x & 0x3F][y & 0x3F]);
-							}
-						}
-					} else {
-						for (int x = Math.max(entity.x - 64, rx << 6); x <= toX; x++) {
-							for (int y = Math.max(entity.z - 64, ry << 6); y <= toY; y++) {
-								unsafe.putInt(flags + i(x - entity.x + 64, y - entity.z + 64), 0xFFFFFFFF);
-							}
-						}
-					}
-				}
-			}
-		}
+		window.center(world, entity.x, entity.z, entity.level, RECENTER_DISTANCE);
+		loadedX = window.centerX();
+		loadedY = window.centerZ();
+		loadedZ = window.level();
 	}
 	
 	@Override
@@ -64,27 +64,29 @@ public class RangeStepSupplier extends MeleeStepSupplier {
 		int oldY = projY;
 		
 		PathRouteFinder finder = new PathRouteFinder(follower);
-		while (projX != targetX || projY != targetY) {
-			err2 = err << 1;
-			if (err2 > -dy) {
-				err -= dy;
-				projX += sx;
+		try {
+			while (projX != targetX || projY != targetY) {
+				err2 = err << 1;
+				if (err2 > -dy) {
+					err -= dy;
+					projX += sx;
+				}
+				if (err2 < dx) {
+					err += dx;
+					projY += sy;
+				}
+				
+				Direction d = Direction.of(projX - oldX, projY - oldY);
+				if (!finder.legalProjectileStep(follower.world(), new Tile(oldX, oldY, follower.tile().level), d)) {
+					return false;
+				}
+				oldX = projX;
+				oldY = projY;
 			}
-			if (err2 < dx) {
-				err += dx;
-				projY += sy;
-			}
-			
-			Direction d = Direction.of(projX - oldX, projY - oldY);
-			if (!finder.legalProjectileStep(follower.world(), new Tile(oldX, oldY, follower.tile().level), d)) {
-				finder.free();
-				return false;
-			}
-			oldX = projX;
-			oldY = projY;
+			return true;
+		} finally {
+			finder.free();
 		}
-		finder.free();
-		return true;
 	}
 	
 }
@@ -0,0 +1,116 @@
+package io.nozemi.runescape.model.map.steroids;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.nozemi.runescape.model.map.steroids.PathRouteFinder.unsafe;
+
+/**
+ * Bounded pool of the off-heap clip windows used by {@link PathRouteFinder}. Windows are acquired when a finder is
+ * created and handed back by {@link PathRouteFinder#free()}, so native memory follows the number of finders in use
+ * rather than waiting on finalizers.
+ * <p>
+ * Up to {@link #MAX_IDLE} released windows are kept for reuse, and an acquire picks the one closest to where it is
+ * needed so its masks can be reused. An acquire finding none idle allocates a new window and counts as an exhaustion;
+ * a release finding the pool full frees the window.
+ */
+public final class RouteFinderMemory {
+
+	static final long FLAGS_SIZE = Integer.BYTES * 128 * 128 + 500_000;
+	static final int MAX_IDLE = 16;
+
+	private static final ClipWindow[] idle = new ClipWindow[MAX_IDLE];
+	private static int idleCount;
+
+	private static final AtomicLong nativeBytes = new AtomicLong();
+	private static final AtomicLong inUse = new AtomicLong();
+	private static final AtomicLong exhaustions = new AtomicLong();
+
+	private RouteFinderMemory() {
+	}
+
+	/**
+	 * Takes the idle window that needs the least work to serve the tile, or allocates a new one.
+	 */
+	static ClipWindow acquire(int x, int z, int level) {
+		inUse.incrementAndGet();
+
+		synchronized (idle) {
+			if (idleCount > 0) {
+				int best = 0;
+				int bestDistance = Integer.MAX_VALUE;
+
+				for (int i = 0; i < idleCount; i++) {
+					ClipWindow window = idle[i];
+					int distance = !window.valid() || window.level() != level ? Integer.MAX_VALUE - 1
+							: Math.max(Math.abs(window.centerX() - x), Math.abs(window.centerZ() - z));
+					if (distance < bestDistance) {
+						best = i;
+						bestDistance = distance;
+					}
+				}
+
+				ClipWindow window = idle[best];
+				idle[best] = idle[--idleCount];
+				idle[idleCount] = null;
+				return window;
+			}
+		}
+
+		exhaustions.incrementAndGet();
+		return new ClipWindow(allocate(FLAGS_SIZE));
+	}
+
+	static void release(ClipWindow window) {
+		inUse.decrementAndGet();
+
+		synchronized (idle) {
+			if (idleCount < MAX_IDLE) {
+				idle[idleCount++] = window;
+				return;
+			}
+		}
+
+		free(window.address, FLAGS_SIZE);
+	}
+
+	static long allocate(long size) {
+		long address = unsafe.allocateMemory(size);
+		nativeBytes.addAndGet(size);
+		return address;
+	}
+
+	static void free(long address, long size) {
+		unsafe.freeMemory(address);
+		nativeBytes.addAndGet(-size);
+	}
+
+	/**
+	 * @return the off-heap bytes currently allocated by route finders, idle pool and per-thread scratch included.
+	 */
+	public static long nativeBytes() {
+		return nativeBytes.get();
+	}
+
+	/**
+	 * @return the number of windows held by live finders.
+	 */
+	public static long inUse() {
+		return inUse.get();
+	}
+
+	/**
+	 * @return how often a finder found no idle window and had to allocate one.
+	 */
+	public static long exhaustions() {
+		return exhaustions.get();
+	}
+
+	/**
+	 * @return the memory counters, formatted for logging.
+	 */
+	public static String summary() {
+		return String.format("Route finder memory: %dKB native, %d in use, %d exhaustions.",
+				nativeBytes() / 1024, inUse(), exhaustions());
+	}
+
+}
@@ -3,12 +3,16 @@ package io.nozemi.runescape.net;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.typesafe.config.Config;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.util.AttributeKey;
 import io.nozemi.runescape.GameInitializer;
+import io.nozemi.runescape.net.codec.pregame.Js5DataEncoder;
 import io.nozemi.runescape.net.future.ClosingChannelFuture;
 import io.nozemi.runescape.net.message.HandshakeMessage;
 import io.nozemi.runescape.net.message.HandshakeResponse;
@@ -18,8 +22,12 @@ import nl.bartpelle.dawnguard.DataStore;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 @ChannelHandler.Sharable
@@ -32,6 +40,22 @@ public class Js5Handler extends ChannelInboundHandlerAdapter {
     private final DataStore store;
     private final Config config;
 
+    /**
+     * The memory-mapped filestore when <code>net.js5.mapped</code> is enabled, otherwise null.
+     */
+    private final Js5MappedStore mapped;
+
+    /**
+     * Encoded responses shared by all clients, or null when <code>net.js5.cache.mb</code> is 0. Off by default with the
+     * mapped filestore, as cached responses are heap copies and would take the place of its copy-free path.
+     */
+    private final Js5ResponseCache cache;
+
+    /**
+     * When the handshake of the channel was accepted, to tell which requests belong to the hot set.
+     */
+    private static final AttributeKey<Long> JS5_CONNECTED_AT_KEY = AttributeKey.newInstance("JS5_CONNECTED_AT");
+
     /**
      * Timed cache for requests to prevent DDoS through amplified cache responses.
      */
@@ -48,6 +72,54 @@ public class Js5Handler extends ChannelInboundHandlerAdapter {
         if(store == null) {
             throw new RuntimeException("Failed to get data store...");
         }
+
+        this.mapped = config.hasPath("net.js5.mapped") && config.getBoolean("net.js5.mapped") ? mapStore() : null;
+
+        long budget = (config.hasPath("net.js5.cache.mb") ? config.getLong("net.js5.cache.mb") : mapped != null ? 0 : 64) * 1024 * 1024;
+        this.cache = budget > 0 ? createCache(budget) : null;
+    }
+
+    private Js5ResponseCache createCache(long budget) {
+        String hotSet = config.hasPath("net.js5.cache.hotset") ? config.getString("net.js5.cache.hotset") : "data/js5-hotset.txt";
+        Js5ResponseCache cache = new Js5ResponseCache(budget, this::encode, Paths.get(hotSet));
+        cache.preload();
+
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "js5-hotset");
+            thread.setDaemon(true);
+            return thread;
+        }).scheduleAtFixedRate(() -> {
+            cache.saveHotSet();
+            logger.info(cache.summary());
+        }, 5, 5, TimeUnit.MINUTES);
+        return cache;
+    }
+
+    /**
+     * Encodes the full response to an archive request, preferably straight from the mapped filestore.
+     */
+    private byte[] encode(int index, int archive) {
+        ByteBuf out = mapped != null ? mapped.response(index, archive, UnpooledByteBufAllocator.DEFAULT) : null;
+
+        if (out == null) {
+            byte[] data = index == 255 ? getDescriptorData(archive) : getFileData(index, archive);
+            out = Unpooled.buffer(3 + data.length + data.length / 511 + 1);
+            Js5DataEncoder.encode(index, archive, data, out);
+        }
+
+        byte[] response = new byte[out.readableBytes()];
+        out.readBytes(response);
+        out.release();
+        return response;
+    }
+
+    private Js5MappedStore mapStore() {
+        try {
+            return new Js5MappedStore(new File(config.getString("server.filestore")), store.getIndexCount());
+        } catch (IOException e) {
+            logger.error("Failed to map the filestore, serving JS5 from the heap instead.", e);
+            return null;
+        }
     }
 
     private static Cache<Long, Long> requestsCacheFor(Channel channel) {
@@ -93,6 +165,7 @@ public class Js5Handler extends ChannelInboundHandlerAdapter {
                 logger.trace("Accepted js5 handshake from {}", ctx.channel());
             }
 
+            ctx.channel().attr(JS5_CONNECTED_AT_KEY).set(System.currentTimeMillis());
             ctx.writeAndFlush(HandshakeResponse.ALL_OK);
         } else if (msg instanceof Js5DataRequest) {
             if (isThrottled(ctx.channel())) {
@@ -102,6 +175,29 @@ public class Js5Handler extends ChannelInboundHandlerAdapter {
             }
 
             Js5DataRequest req = ((Js5DataRequest) msg);
+
+            if (cache != null && !(req.index() == 255 && req.container() == 255)) {
+                byte[] response = cache.response(req.index(), req.container());
+                ctx.writeAndFlush(Unpooled.wrappedBuffer(response));
+                throttle(ctx.channel(), response.length);
+
+                Long connectedAt = ctx.channel().attr(JS5_CONNECTED_AT_KEY).get();
+                if (connectedAt != null && System.currentTimeMillis() - connectedAt <= Js5ResponseCache.HOT_WINDOW)
+                    cache.markHot(req.index(), req.container(), response);
+                return;
+            }
+
+            if (mapped != null && !(req.index() == 255 && req.container() == 255)) {
+                ByteBuf response = mapped.response(req.index(), req.container(), ctx.alloc());
+
+                if (response != null) {
+                    int size = response.readableBytes();
+                    ctx.writeAndFlush(response);
+                    throttle(ctx.channel(), size);
+                    return;
+                }
+            }
+
             byte[] data;
 
             if (req.index() == 255 && req.container() == 255) {
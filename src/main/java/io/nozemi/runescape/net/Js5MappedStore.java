@@ -0,0 +1,168 @@
+package io.nozemi.runescape.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of the filestore for serving JS5 requests. The data file is memory-mapped once, and every archive's
+ * first sector and size is read from the index files into a table up front. Responses are then gathered straight from
+ * the mapping into a (direct) network buffer, so cache bytes never pass through the heap.
+ * <p>
+ * Archives are spread over 520-byte sectors, and the client expects a marker byte every 512 bytes of the response,
+ * so a plain file region cannot be sent as is. This copies each sector's payload around the markers instead.
+ */
+public class Js5MappedStore {
+
+	private static final Logger logger = LogManager.getLogger(Js5MappedStore.class);
+
+	private static final int SECTOR_SIZE = 520;
+	private static final int BLOCK_SIZE = 512; // Response bytes between two markers
+	private static final int DESCRIPTOR_INDEX = 255;
+
+	private final MappedByteBuffer data;
+
+	/**
+	 * Per index, per archive: the first sector in the upper half and the size in the lower half. Null for indices
+	 * that do not exist.
+	 */
+	private final long[][] table = new long[256][];
+
+	public Js5MappedStore(File folder, int indexCount) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(new File(folder, "main_file_cache.dat2"), "r")) {
+			if (file.length() > Integer.MAX_VALUE)
+				throw new IOException("Data file is too large to map (" + file.length() + " bytes).");
+
+			data = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		}
+
+		int archives = 0;
+		for (int index = 0; index < indexCount; index++) {
+			archives += loadIndex(new File(folder, "main_file_cache.idx" + index), index);
+		}
+		archives += loadIndex(new File(folder, "main_file_cache.idx255"), DESCRIPTOR_INDEX);
+
+		logger.info("Mapped {}KB of JS5 data holding {} archives.", data.capacity() / 1024, archives);
+	}
+
+	private int loadIndex(File file, int index) throws IOException {
+		if (!file.exists())
+			return 0;
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			MappedByteBuffer entries = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			long[] archives = new long[(int) (raf.length() / 6)];
+
+			for (int archive = 0; archive < archives.length; archive++) {
+				int pos = archive * 6;
+				int size = tribyte(entries, pos);
+				int sector = tribyte(entries, pos + 3);
+				archives[archive] = ((long) sector << 32) | size;
+			}
+
+			table[index] = archives;
+			return archives.length;
+		}
+	}
+
+	/**
+	 * Builds the full response to a JS5 request, including the header and markers, or null if the archive is absent
+	 * or its sectors are corrupt.
+	 */
+	public ByteBuf response(int index, int archive, ByteBufAllocator alloc) {
+		long[] archives = table[index];
+		if (archives == null || archive < 0 || archive >= archives.length)
+			return null;
+
+		int size = (int) archives[archive];
+		int sector = (int) (archives[archive] >>> 32);
+		if (size <= 5 || sector == 0)
+			return null;
+
+		boolean large = archive > 0xFFFF;
+		int header = large ? 10 : 8;
+		long first = (long) sector * SECTOR_SIZE + header;
+		if (first + 5 > data.capacity())
+			return null;
+
+		// Only send the container, leaving out the version trailing it.
+		int compression = data.get((int) first) & 0xFF;
+		int length = Math.min(size, data.getInt((int) first + 1) + (compression == 0 ? 5 : 9));
+		if (length < 5)
+			return null;
+
+		ByteBuf out = alloc.directBuffer(responseLength(length));
+		out.writeByte(index);
+		out.writeShort(archive);
+
+		ByteBuffer view = data.duplicate();
+		int remaining = length;
+		int chunk = 0;
+
+		while (remaining > 0) {
+			int payload = Math.min(remaining, SECTOR_SIZE - header);
+			long end = (long) sector * SECTOR_SIZE + header + payload;
+			if (sector <= 0 || end > data.capacity()) {
+				out.release();
+				return null;
+			}
+
+			int pos = sector * SECTOR_SIZE;
+
+			int sectorArchive = large ? data.getInt(pos) : data.getShort(pos) & 0xFFFF;
+			int sectorChunk = data.getShort(pos + (large ? 4 : 2)) & 0xFFFF;
+			int next = tribyte(data, pos + (large ? 6 : 4));
+			int sectorIndex = data.get(pos + (large ? 9 : 7)) & 0xFF;
+
+			if (sectorArchive != archive || sectorChunk != chunk || sectorIndex != index) {
+				logger.warn("Corrupt sector {} while serving archive {} of index {}.", sector, archive, index);
+				out.release();
+				return null;
+			}
+
+			copy(view, pos + header, payload, out);
+
+			remaining -= payload;
+			sector = next;
+			chunk++;
+		}
+
+		return out;
+	}
+
+	/**
+	 * Copies the bytes to the response, breaking them up by a marker whenever the response hits a block boundary.
+	 */
+	private static void copy(ByteBuffer view, int pos, int length, ByteBuf out) {
+		while (length > 0) {
+			if (out.writerIndex() % BLOCK_SIZE == 0)
+				out.writeByte(-1);
+
+			int n = Math.min(length, BLOCK_SIZE - out.writerIndex() % BLOCK_SIZE);
+			view.limit(pos + n).position(pos);
+			out.writeBytes(view);
+
+			view.limit(view.capacity());
+			pos += n;
+			length -= n;
+		}
+	}
+
+	private static int responseLength(int length) {
+		int total = 3 + length;
+		return total + total / (BLOCK_SIZE - 1); // Room for a marker per block boundary the data crosses
+	}
+
+	private static int tribyte(ByteBuffer buffer, int pos) {
+		return ((buffer.get(pos) & 0xFF) << 16) | ((buffer.get(pos + 1) & 0xFF) << 8) | (buffer.get(pos + 2) & 0xFF);
+	}
+
+}
@@ -0,0 +1,173 @@
+package io.nozemi.runescape.net;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fully encoded JS5 responses (header and block markers included), which are the same for every client. Entries are
+ * weighed by their size and the least recently used ones are evicted once the byte budget is exceeded.
+ * <p>
+ * Archives requested by clients in their first {@link #HOT_WINDOW} milliseconds make up the hot set. It is written to
+ * disk, and preloaded on the next start so the first wave of fresh clients does not all miss at once.
+ */
+public class Js5ResponseCache {
+
+	private static final Logger logger = LogManager.getLogger(Js5ResponseCache.class);
+
+	/**
+	 * How long after connecting the requests of a client count towards the hot set.
+	 */
+	public static final long HOT_WINDOW = 30_000;
+
+	/**
+	 * Most archives kept in the hot set. Any client can add to it, and all of it is encoded at startup.
+	 */
+	public static final int MAX_HOT = 4096;
+
+	/**
+	 * Size of the response header, a response no longer than this has no data.
+	 */
+	private static final int HEADER = 3;
+
+	/**
+	 * Rough heap cost of an entry besides its data, so requests for missing archives cannot fill the cache for free.
+	 */
+	private static final int ENTRY_OVERHEAD = 96;
+
+	/**
+	 * Produces the encoded response for an archive.
+	 */
+	public interface Encoder {
+		byte[] encode(int index, int archive);
+	}
+
+	private final Cache<Long, byte[]> responses;
+	private final Encoder encoder;
+	private final Path hotSetFile;
+
+	private final Set<Long> hotSet = ConcurrentHashMap.newKeySet();
+	private final AtomicBoolean hotSetDirty = new AtomicBoolean();
+
+	public Js5ResponseCache(long budget, Encoder encoder, Path hotSetFile) {
+		this.responses = CacheBuilder.newBuilder()
+				.maximumWeight(budget)
+				.<Long, byte[]>weigher((key, data) -> ENTRY_OVERHEAD + data.length)
+				.recordStats()
+				.build();
+		this.encoder = encoder;
+		this.hotSetFile = hotSetFile;
+	}
+
+	public byte[] response(int index, int archive) {
+		try {
+			return responses.get(key(index, archive), () -> encoder.encode(index, archive));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw new RuntimeException("Failed to encode archive " + archive + " of index " + index, e.getCause());
+		}
+	}
+
+	/**
+	 * Adds the archive to the hot set, to be preloaded on the next start, unless it has no data or the set is full.
+	 */
+	public void markHot(int index, int archive, byte[] response) {
+		if (response.length <= HEADER || hotSet.size() >= MAX_HOT)
+			return;
+
+		if (hotSet.add(key(index, archive)))
+			hotSetDirty.set(true);
+	}
+
+	/**
+	 * Loads the hot set written by the previous run and encodes all of it up front.
+	 */
+	public void preload() {
+		if (!Files.exists(hotSetFile))
+			return;
+
+		try {
+			int loaded = 0;
+			for (String line : Files.readAllLines(hotSetFile)) {
+				String[] parts = line.trim().split(" ");
+				if (parts.length != 2)
+					continue;
+
+				if (hotSet.size() >= MAX_HOT)
+					break;
+
+				int index = Integer.parseInt(parts[0]);
+				int archive = Integer.parseInt(parts[1]);
+				if (response(index, archive).length > HEADER) {
+					hotSet.add(key(index, archive));
+					loaded++;
+				}
+			}
+
+			logger.info("Preloaded {} JS5 responses ({}KB).", loaded, weight() / 1024);
+		} catch (IOException | RuntimeException e) {
+			logger.error("Failed to preload the JS5 hot set from {}.", hotSetFile, e);
+		}
+	}
+
+	/**
+	 * Writes the hot set to disk if it changed since it was last saved.
+	 */
+	public void saveHotSet() {
+		if (!hotSetDirty.getAndSet(false))
+			return;
+
+		List<String> lines = new ArrayList<>(hotSet.size());
+		for (long key : hotSet) {
+			lines.add((key >>> 32) + " " + (int) key);
+		}
+
+		try {
+			Files.write(hotSetFile, lines);
+		} catch (IOException e) {
+			logger.error("Failed to save the JS5 hot set to {}.", hotSetFile, e);
+		}
+	}
+
+	/**
+	 * @return the combined size of the cached responses, in bytes.
+	 */
+	public long weight() {
+		long weight = 0;
+		for (byte[] data : responses.asMap().values()) {
+			weight += data.length;
+		}
+		return weight;
+	}
+
+	public CacheStats stats() {
+		return responses.stats();
+	}
+
+	/**
+	 * @return the hit and miss counters and cache size, formatted for logging.
+	 */
+	public String summary() {
+		CacheStats stats = responses.stats();
+		return String.format("JS5 cache: %d hits, %d misses (%.1f%%), %d evictions, %d responses, %dKB, %d hot.",
+				stats.hitCount(), stats.missCount(), stats.hitRate() * 100, stats.evictionCount(), responses.size(),
+				weight() / 1024, hotSet.size());
+	}
+
+	private static long key(int index, int archive) {
+		return ((long) index << 32) | (archive & 0xFFFFFFFFL);
+	}
+
+}
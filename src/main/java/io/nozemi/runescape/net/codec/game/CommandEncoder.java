@@ -1,9 +1,12 @@
 package io.nozemi.runescape.net.codec.game;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.util.concurrent.FastThreadLocal;
 import io.nozemi.runescape.io.RSBuffer;
 import io.nozemi.runescape.model.entity.Player;
 import io.nozemi.runescape.model.entity.player.Privilege;
@@ -12,56 +15,150 @@ import io.nozemi.runescape.net.message.game.Command;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * Created by Bart Pelle on 8/22/2014.
  */
 @ChannelHandler.Sharable
-public class CommandEncoder extends MessageToByteEncoder<Command> {
+public class CommandEncoder extends MessageToMessageEncoder<Command> {
 	
 	private static final Logger logger = LogManager.getLogger(CommandEncoder.class);
 	
 	static int[] good_boys = new int[]{3, 36, 16, 79, 56, 8, 33, 37, 10, 54, 49, 50, 7, 11, 20, 21, 35, 62,
 			58, 76, 82, 46, 14, 71, 13, 47, 44, 27, 17, 64, 26, 24, 42, 30, 45, 53, 84, 85, 0, 65, 70, 68, 29,
-			78, 86, 61, 75, 87, 9, 88, 81, 41, 89, 90, 5, 43, 91};
+			78, 86, 61, 75, 87, 9, 88, 81, 41, 89, 90, 5, 43, 91, 59};
+	
+	/**
+	 * Lookup table of {@link #good_boys}, indexed by opcode.
+	 */
+	private static final boolean[] WHITELISTED = new boolean[256];
+	
+	/**
+	 * Payloads at least this big are composed with their opcode header instead of copied behind it. Below this the
+	 * copy is cheaper than the extra component.
+	 */
+	private static final int COMPOSE_THRESHOLD = 512;
+	
+	/**
+	 * Bytes written by every IO thread that encoded at least one packet.
+	 */
+	private static final List<Throughput> throughputs = new CopyOnWriteArrayList<>();
+	private static final FastThreadLocal<Throughput> throughput = new FastThreadLocal<Throughput>() {
+		@Override
+		protected Throughput initialValue() {
+			Throughput t = new Throughput(Thread.currentThread().getName());
+			throughputs.add(t);
+			return t;
+		}
+	};
+	
+	static {
+		for (int i : good_boys) {
+			WHITELISTED[i] = true;
+		}
+	}
+	
+	private final int composeThreshold;
+	
+	public CommandEncoder() {
+		this(COMPOSE_THRESHOLD);
+	}
+	
+	/**
+	 * @param composeThreshold the payload size from which packets are composed, see {@link #COMPOSE_THRESHOLD}.
+	 */
+	CommandEncoder(int composeThreshold) {
+		this.composeThreshold = composeThreshold;
+	}
 	
 	@Override
-	protected void encode(ChannelHandlerContext ctx, Command msg, ByteBuf out) throws Exception {
+	protected void encode(ChannelHandlerContext ctx, Command msg, List<Object> out) throws Exception {
 		try {
 			Player player = ctx.channel().attr(ServerHandler.ATTRIB_PLAYER).get();
 			RSBuffer buffer = msg.write(player);
 
+			// Dropped commands still have to produce a message, or the encoder fails the write
 			if (buffer == null) {
+				out.add(Unpooled.EMPTY_BUFFER);
 				return;
 			}
 			
 			buffer.finish();
 			
-			boolean write = false;
-			for (int i : good_boys) {
-				if (i == buffer.packet()) {
-					write = true;
-					break;
-				}
-			}
+			int opcode = buffer.packet();
+			boolean write = opcode >= 0 && opcode < WHITELISTED.length && WHITELISTED[opcode];
 			
 			if (!write && player.privilege() == Privilege.ADMIN) {
-				logger.info("Refusing to write packet {} ({}) because it's not whitelisted.", buffer.packet(), msg.getClass().getSimpleName());
+				logger.info("Refusing to write packet {} ({}) because it's not whitelisted.", opcode, msg.getClass().getSimpleName());
+			}
+			
+			ByteBuf payload = buffer.get();
+			if (!write) {
+				if (!buffer.reusable())
+					payload.release();
+				out.add(Unpooled.EMPTY_BUFFER);
+				return;
 			}
 			
-			if (write && buffer.packet() != -1) {
-				out.writeByte((byte) buffer.packet()/* + (byte)player.outrand().nextInt()*/);
+			// Reusable buffers are shared between channels, so only hand out a view with its own indices.
+			int length = payload.readableBytes();
+			if (buffer.reusable())
+				payload = payload.retainedDuplicate();
 				
-				byte[] bytes = buffer.get().array();
-				for (int i = 0; i < buffer.get().readableBytes(); i++) {
-					out.writeByte(bytes[i]);
-				}
+			if (length < composeThreshold) {
+				ByteBuf packet = ctx.alloc().buffer(1 + length);
+				packet.writeByte(opcode/* + (byte)player.outrand().nextInt()*/);
+				packet.writeBytes(payload, payload.readerIndex(), length);
+				payload.release();
+				out.add(packet);
+			} else {
+				ByteBuf header = ctx.alloc().buffer(1).writeByte(opcode);
+				CompositeByteBuf packet = ctx.alloc().compositeBuffer(2);
+				packet.addComponents(true, header, payload);
+				out.add(packet);
 			}
 			
-			if (!buffer.reusable())
-				buffer.get().release();
+			throughput.get().bytes += 1 + length;
 		} catch (Exception e) {
 			logger.error("Error while encoding {}", msg, e);
+			if (out.isEmpty())
+				out.add(Unpooled.EMPTY_BUFFER);
+		}
+	}
+	
+	/**
+	 * @return the bytes per second every IO thread encoded since the previous call, formatted for logging.
+	 */
+	public static String throughput() {
+		StringJoiner joiner = new StringJoiner(", ", "[", "]");
+		long now = System.nanoTime();
+		
+		for (Throughput t : throughputs) {
+			long bytes = t.bytes;
+			double seconds = (now - t.sampledAt) / 1_000_000_000.0;
+			joiner.add(String.format("%s: %.1fKB/s", t.thread, (bytes - t.sampledBytes) / 1024.0 / seconds));
+			t.sampledBytes = bytes;
+			t.sampledAt = now;
+		}
+		return joiner.toString();
+	}
+	
+	private static class Throughput {
+		
+		private final String thread;
+		private volatile long bytes; // Only written by the owning IO thread
+		
+		// Only touched by whoever reports the throughput
+		private long sampledBytes;
+		private long sampledAt = System.nanoTime();
+		
+		private Throughput(String thread) {
+			this.thread = thread;
 		}
+		
 	}
 	
 }
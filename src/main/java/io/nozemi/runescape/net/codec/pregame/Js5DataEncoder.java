@@ -12,10 +12,15 @@ public class Js5DataEncoder extends MessageToByteEncoder<Js5DataMessage> {
 	
 	@Override
 	protected void encode(ChannelHandlerContext ctx, Js5DataMessage msg, ByteBuf out) throws Exception {
-		byte[] data = msg.data();
-		
-		out.writeByte(msg.index());
-		out.writeShort(msg.container());
+		encode(msg.index(), msg.container(), msg.data(), out);
+	}
+	
+	/**
+	 * Writes the response header and the data, with a marker byte at every 512-byte boundary of the response.
+	 */
+	public static void encode(int index, int container, byte[] data, ByteBuf out) {
+		out.writeByte(index);
+		out.writeShort(container);
 		
 		for (byte b : data) {
 			if (out.writerIndex() % 512 == 0) {
@@ -81,8 +81,10 @@ public class PreGameDecoder extends ByteToMessageDecoder {
 
 			/* Decode login now that we're sure this is a full packet */
 			LoginRequestMessage lrm = decodeLogin(ctx, in);
-			if (lrm != null)
+			if (lrm != null) {
+				lrm.reconnect(opcode == RECONNECT);
 				out.add(lrm);
+			}
 			
 			// Skip to end of message
 			in.readerIndex(end);
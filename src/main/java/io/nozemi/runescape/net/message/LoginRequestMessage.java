@@ -18,6 +18,8 @@ public class LoginRequestMessage {
     private final int authPin;
     private long delayedUntil;
     private int retries;
+    private long receivedAt;
+    private boolean reconnect;
 
     public LoginRequestMessage(Channel channel, String username, String password, int[] isaacSeed, int[] crcs,
                                int revision, byte[] randomDat, boolean resizableInterfaces, String uuid, int authPin,
@@ -27,7 +29,7 @@ public class LoginRequestMessage {
         this.password = password;
         this.isaacSeed = isaacSeed;
         this.crcs = crcs;
-        this.retries = revision;
+        this.revision = revision;
         this.randomDat = randomDat;
         this.resizableInterfaces = resizableInterfaces;
         this.uuid = uuid;
@@ -99,4 +101,26 @@ public class LoginRequestMessage {
     public void addRetry() {
         this.retries++;
     }
+
+    /**
+     * @return whether the client is reconnecting to a session it lost, rather than logging in.
+     */
+    public boolean reconnect() {
+        return this.reconnect;
+    }
+
+    public void reconnect(boolean reconnect) {
+        this.reconnect = reconnect;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} the request was queued at.
+     */
+    public long receivedAt() {
+        return this.receivedAt;
+    }
+
+    public void receivedAt(long receivedAt) {
+        this.receivedAt = receivedAt;
+    }
 }
@@ -19,15 +19,20 @@ public class AddGroundItem extends Command {
 	@Override
 	public RSBuffer encode(Player player) {
 		RSBuffer packet = new RSBuffer(player.channel().alloc().buffer(6)).packet(61);
-		
+		writeBody(packet, item);
+		return packet;
+	}
+	
+	/**
+	 * Writes the packet without opcode, which is also how it goes into an {@link UpdateChunk}.
+	 */
+	public static void writeBody(RSBuffer packet, GroundItem item) {
 		int x = item.tile().x % 8;
 		int z = item.tile().z % 8;
 
 		packet.writeByteS((x << 4) | z);
 		packet.writeShortA(item.item().id());
 		packet.writeLEShort(item.item().amount());
-		
-		return packet;
 	}
 	
 }
@@ -19,11 +19,16 @@ public class RemoveGroundItem extends Command {
 	@Override
 	public RSBuffer encode(Player player) {
 		RSBuffer packet = new RSBuffer(player.channel().alloc().buffer(6)).packet(75);
-
+		writeBody(packet, item);
+		return packet;
+	}
+	
+	/**
+	 * Writes the packet without opcode, which is also how it goes into an {@link UpdateChunk}.
+	 */
+	public static void writeBody(RSBuffer packet, GroundItem item) {
 		packet.writeLEShortA(item.item().id());
 		packet.writeByteA(((item.tile().x % 8) << 4) | (item.tile().z % 8));
-		
-		return packet;
 	}
 	
 }
@@ -19,11 +19,16 @@ public class RemoveObject extends Command {
 	@Override
 	public RSBuffer encode(Player player) {
 		RSBuffer buffer = new RSBuffer(player.channel().alloc().buffer(3)).packet(58);
-		
+		writeBody(buffer, obj);
+		return buffer;
+	}
+	
+	/**
+	 * Writes the packet without opcode, which is also how it goes into an {@link UpdateChunk}.
+	 */
+	public static void writeBody(RSBuffer buffer, MapObj obj) {
 		buffer.writeByte((obj.type() << 2) | obj.rot());
 		buffer.writeByteS(((obj.tile().x & 7) << 4) | (obj.tile().z & 7));
-		
-		return buffer;
 	}
 	
 	
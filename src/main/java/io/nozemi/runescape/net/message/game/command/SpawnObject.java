@@ -19,12 +19,17 @@ public class SpawnObject extends Command {
 	@Override
 	public RSBuffer encode(Player player) {
 		RSBuffer buffer = new RSBuffer(player.channel().alloc().buffer(5)).packet(76);
-
+		writeBody(buffer, obj);
+		return buffer;
+	}
+	
+	/**
+	 * Writes the packet without opcode, which is also how it goes into an {@link UpdateChunk}.
+	 */
+	public static void writeBody(RSBuffer buffer, MapObj obj) {
 		buffer.writeByteN(((obj.tile().x & 7) << 4) | (obj.tile().z & 7));
 		buffer.writeByteS((obj.type() << 2) | obj.rot());
 		buffer.writeShortA(obj.id());
-		
-		return buffer;
 	}
 	
 	
@@ -0,0 +1,131 @@
+package io.nozemi.runescape.net.message.game.command;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.nozemi.runescape.io.RSBuffer;
+import io.nozemi.runescape.model.GroundItem;
+import io.nozemi.runescape.model.Tile;
+import io.nozemi.runescape.model.entity.Player;
+import io.nozemi.runescape.model.map.MapObj;
+import io.nozemi.runescape.net.message.game.Command;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.util.List;
+
+/**
+ * Any number of object and ground item changes within one 8x8 chunk, in place of a {@link SetMapBase} before each of
+ * them. The client reads the base of the chunk followed by ops, each the body of the standalone packet behind its
+ * index in the client's list of chunk ops.
+ * <p>
+ * The payload is built once and can be written to every player sharing the same active map.
+ */
+public class UpdateChunk extends Command {
+
+	public static final int ADD_GROUND_ITEM = 0;
+	public static final int REMOVE_GROUND_ITEM = 1;
+	public static final int SPAWN_OBJECT = 3;
+	public static final int REMOVE_OBJECT = 8;
+
+	private final byte[] payload;
+
+	private UpdateChunk(byte[] payload) {
+		this.payload = payload;
+	}
+
+	@Override
+	public RSBuffer encode(Player player) {
+		// Sized when built, wrapping it again keeps the readers of different channels apart
+		return new RSBuffer(Unpooled.wrappedBuffer(payload)).packet(59);
+	}
+
+	public static class Builder {
+
+		/**
+		 * Large chunk updates are split over packets of about this size, far below the client's packet buffer.
+		 */
+		private static final int MAX_PAYLOAD = 5000;
+
+		private final int x;
+		private final int z;
+		private final List<UpdateChunk> packets = new ObjectArrayList<>(1);
+		private RSBuffer buffer;
+
+		/**
+		 * @param tile any tile of the chunk.
+		 */
+		public Builder(Player player, Tile tile) {
+			Tile base = player.activeMap();
+			this.x = (tile.x - base.x) / 8 * 8;
+			this.z = (tile.z - base.z) / 8 * 8;
+		}
+
+		public Builder addGroundItem(GroundItem item) {
+			AddGroundItem.writeBody(op(ADD_GROUND_ITEM, 5), item);
+			return this;
+		}
+
+		public Builder removeGroundItem(GroundItem item) {
+			RemoveGroundItem.writeBody(op(REMOVE_GROUND_ITEM, 3), item);
+			return this;
+		}
+
+		public Builder spawnObject(MapObj obj) {
+			SpawnObject.writeBody(op(SPAWN_OBJECT, 4), obj);
+			return this;
+		}
+
+		public Builder removeObject(MapObj obj) {
+			RemoveObject.writeBody(op(REMOVE_OBJECT, 2), obj);
+			return this;
+		}
+
+		/**
+		 * Appends ops that were written before, index included.
+		 */
+		public Builder ops(ByteBuf ops, int index, int length) {
+			reserve(length);
+			buffer.get().writeBytes(ops, index, length);
+			return this;
+		}
+
+		public boolean isEmpty() {
+			return buffer == null && packets.isEmpty();
+		}
+
+		/**
+		 * @return the packets, none if no op was added.
+		 */
+		public List<UpdateChunk> build() {
+			if (buffer != null) {
+				buffer.finish();
+				packets.add(new UpdateChunk(ByteBufUtil.getBytes(buffer.get())));
+				buffer = null;
+			}
+			return packets;
+		}
+
+		public void writeTo(Player player) {
+			for (UpdateChunk packet : build())
+				player.write(packet);
+		}
+
+		private RSBuffer op(int index, int size) {
+			reserve(1 + size);
+			return buffer.writeByte(index);
+		}
+
+		private void reserve(int bytes) {
+			if (buffer != null && buffer.get().writerIndex() + bytes > MAX_PAYLOAD)
+				build();
+
+			if (buffer == null) {
+				buffer = new RSBuffer(Unpooled.buffer(64)).packet(59).writeSize(RSBuffer.SizeType.SHORT);
+				buffer.writeByte(z);
+				buffer.writeByteA(x);
+			}
+		}
+
+	}
+
+}
@@ -1,13 +1,17 @@
 package io.nozemi.runescape.orm.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.nozemi.runescape.model.AttributeKey;
 import io.nozemi.runescape.model.Tile;
 import io.nozemi.runescape.model.entity.Player;
+import io.nozemi.runescape.model.item.Item;
+import io.nozemi.runescape.model.item.ItemContainer;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Transient;
 
 @Entity
 public class Character {
@@ -22,6 +26,24 @@ public class Character {
     private double runEnergy;
     private double specialEnergy;
 
+    // Not mapped to the database or the JSON files; only the binary serializer stores these. Null when not loaded.
+    @Transient
+    @JsonIgnore
+    private double[] skillXp;
+    @Transient
+    @JsonIgnore
+    private int[] skillLevels;
+    @Transient
+    @JsonIgnore
+    private int[] varps;
+    // Item containers packed as id and amount per slot, id -1 for empty slots
+    @Transient
+    @JsonIgnore
+    private int[] inventory;
+    @Transient
+    @JsonIgnore
+    private int[] equipment;
+
     public Character() {
 
     }
@@ -32,6 +54,11 @@ public class Character {
         this.posY = player.tile().z;
         this.posZ = player.tile().level;
         this.runEnergy = player.attribOr(AttributeKey.RUN_ENERGY, 0.0);
+        this.skillXp = player.skills().xp().clone();
+        this.skillLevels = player.skills().levels().clone();
+        this.varps = player.varps().raw().clone();
+        this.inventory = pack(player.inventory());
+        this.equipment = pack(player.equipment());
     }
 
     public Player getPlayer(Player player) {
@@ -40,9 +67,43 @@ public class Character {
         player.username(this.username);
         player.tile(new Tile(this.posX, this.posY, this.posZ));
         player.setRunningEnergy(this.runEnergy, true);
+
+        if (skillXp != null && skillLevels != null) {
+            System.arraycopy(skillXp, 0, player.skills().xp(), 0, Math.min(skillXp.length, player.skills().xp().length));
+            System.arraycopy(skillLevels, 0, player.skills().levels(), 0, Math.min(skillLevels.length, player.skills().levels().length));
+            player.skills().recalculateCombat();
+        }
+        if (varps != null) {
+            System.arraycopy(varps, 0, player.varps().raw(), 0, Math.min(varps.length, player.varps().raw().length));
+        }
+        unpack(inventory, player.inventory());
+        unpack(equipment, player.equipment());
         return player;
     }
 
+    private static int[] pack(ItemContainer container) {
+        int[] packed = new int[container.size() * 2];
+        for (int slot = 0; slot < container.size(); slot++) {
+            Item item = container.get(slot);
+            packed[slot * 2] = item == null ? -1 : item.id();
+            packed[slot * 2 + 1] = item == null ? 0 : item.amount();
+        }
+        return packed;
+    }
+
+    private static void unpack(int[] packed, ItemContainer container) {
+        if (packed == null)
+            return;
+
+        Item[] items = new Item[container.size()];
+        for (int slot = 0; slot < Math.min(items.length, packed.length / 2); slot++) {
+            if (packed[slot * 2] >= 0 && packed[slot * 2 + 1] > 0)
+                items[slot] = new Item(packed[slot * 2], packed[slot * 2 + 1]);
+        }
+        container.restore(items);
+        container.makeDirty();
+    }
+
     public int getId() {
         return id;
     }
@@ -112,4 +173,44 @@ public class Character {
     public void setSpecialEnergy(double specialEnergy) {
         this.specialEnergy = specialEnergy;
     }
+
+    public double[] getSkillXp() {
+        return skillXp;
+    }
+
+    public void setSkillXp(double[] skillXp) {
+        this.skillXp = skillXp;
+    }
+
+    public int[] getSkillLevels() {
+        return skillLevels;
+    }
+
+    public void setSkillLevels(int[] skillLevels) {
+        this.skillLevels = skillLevels;
+    }
+
+    public int[] getVarps() {
+        return varps;
+    }
+
+    public void setVarps(int[] varps) {
+        this.varps = varps;
+    }
+
+    public int[] getInventory() {
+        return inventory;
+    }
+
+    public void setInventory(int[] inventory) {
+        this.inventory = inventory;
+    }
+
+    public int[] getEquipment() {
+        return equipment;
+    }
+
+    public void setEquipment(int[] equipment) {
+        this.equipment = equipment;
+    }
 }
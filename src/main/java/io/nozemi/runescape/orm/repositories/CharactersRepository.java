@@ -5,9 +5,13 @@ import io.nozemi.runescape.orm.models.Character;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface CharactersRepository extends JpaRepository<Character, Integer> {
     Optional<Character> findFirstByUsername(String username);
+
+    List<Character> findAllByUsernameInOrderByIdAsc(Collection<String> usernames);
 }
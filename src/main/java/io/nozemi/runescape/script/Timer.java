@@ -2,23 +2,38 @@ package io.nozemi.runescape.script;
 
 /**
  * Created by Bart on 8/12/2015.
+ * <p>
+ * Once registered, a timer counts down on the clock of its {@link TimerRepository} rather than by itself.
  */
 public class Timer {
 	
 	private TimerKey key;
 	private int ticks;
 	
+	// Set while registered, see TimerRepository
+	TimerRepository repository;
+	int deadline;
+	int ticksWhenDue;
+	boolean linked;
+	byte level;
+	int slot;
+	Timer prev;
+	Timer next;
+	
 	public Timer(TimerKey key, int ticks) {
 		this.key = key;
 		this.ticks = ticks;
 	}
 	
 	public int ticks() {
-		return ticks;
+		return repository == null ? ticks : repository.left(this);
 	}
 	
 	public void ticks(int ticks) {
-		this.ticks = ticks;
+		if (repository == null)
+			this.ticks = ticks;
+		else
+			repository.schedule(this, ticks);
 	}
 	
 	public TimerKey key() {
@@ -26,8 +41,9 @@ public class Timer {
 	}
 	
 	public void tick() {
-		if (ticks > 0)
-			ticks--;
+		int left = ticks();
+		if (left > 0)
+			ticks(left - 1);
 	}
 	
 }
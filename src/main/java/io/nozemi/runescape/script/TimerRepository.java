@@ -1,27 +1,63 @@
 package io.nozemi.runescape.script;
 
-import io.nozemi.runescape.util.Indexer;
-
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Bart on 8/12/2015.
+ * <p>
+ * Timers run on a clock of their own that advances every {@link #cycle()}, and wait in a hierarchical timing wheel:
+ * three levels of 32 slots, covering the next 32, 1024 and 32768 ticks, with anything further out in an overflow list
+ * until it comes in range. A slot of a higher level is moved down when the clock reaches it, so a cycle only touches
+ * the timers that expire or move down on it; an entity without timers does not look at the wheel at all. Expired
+ * timers stay registered, and show up in {@link #expired()}, until they are cancelled or set again.
  */
 public class TimerRepository {
 	
-	private Indexer<Timer> timers = new Indexer<>(TimerKey.cachedValues.length + 1);
+	private static final int BITS = 5;
+	private static final int SLOTS = 1 << BITS;
+	private static final int MASK = SLOTS - 1;
+	private static final int LEVELS = 3;
+	private static final int LEVEL1_SPAN = 1 << BITS * 2; // Ticks covered by the first two levels
+	private static final int LEVEL2_SPAN = 1 << BITS * 3; // And by all three
+
+	private static final byte DUE = -1;
+	private static final byte OVERFLOW = LEVELS;
+
+	private Timer[] timers; // By key ordinal, allocated with the first timer
+	private final Timer[][] wheel = new Timer[LEVELS][];
+	private Timer overflow;
+	private Timer due;
+
+	private int now;
+	private int scheduled; // In the wheel or overflow, not yet due
+	private int expired;
 
 	public boolean has(TimerKey key) {
-		Timer timer = timers.get(key.ordinal());
+		Timer timer = get(key);
 		return timer != null && timer.ticks() > 0;
 	}
 	
 	public void register(Timer timer) {
-		timers.set(timer.key().ordinal(), timer);
+		int ticks = timer.ticks();
+		if (timer.repository != null)
+			timer.repository.unregister(timer);
+
+		Timer previous = get(timer.key());
+		if (previous != null)
+			unregister(previous);
+
+		if (timers == null)
+			timers = new Timer[TimerKey.cachedValues.length + 1];
+		timers[timer.key().ordinal()] = timer;
+		timer.repository = this;
+		schedule(timer, ticks);
 	}
 	
 	public int left(TimerKey key) {
-		Timer timer = timers.get(key.ordinal());
+		Timer timer = get(key);
 		return timer == null ? 0 : timer.ticks();
 	}
 	
@@ -112,51 +148,191 @@ public class TimerRepository {
 	}
 	
 	public void register(TimerKey key, int ticks) {
-		timers.set(key.ordinal(), new Timer(key, ticks));
+		register(new Timer(key, ticks));
 	}
 	
 	/**
 	 * Extend up to (if exists) the given ticks, or register new
 	 */
 	public void extendOrRegister(TimerKey key, int ticks) {
-		Timer t = timers.get(key.ordinal());
+		Timer t = get(key);
 		if (t == null) {
-			t = new Timer(key, ticks);
+			register(key, ticks);
 		} else if (t.ticks() < ticks) {
 			t.ticks(ticks);
 		}
-		timers.set(key.ordinal(), t);
 	}
 	
 	/**
 	 * Register if non-existant, or extend.
 	 */
 	public void addOrSet(TimerKey key, int ticks) {
-		Timer t = timers.get(key.ordinal());
+		Timer t = get(key);
 		if (t == null) {
-			t = new Timer(key, ticks);
+			register(key, ticks);
 		} else {
 			t.ticks(t.ticks() + ticks);
 		}
-		timers.set(key.ordinal(), t);
 	}
 	
 	public void cancel(TimerKey name) {
-		timers.set(name.ordinal(), null);
+		Timer timer = get(name);
+		if (timer != null)
+			unregister(timer);
 	}
 	
+	/**
+	 * Advances the clock by a tick, moving the timers that expire on it to {@link #expired()}.
+	 */
 	public void cycle() {
-		if (!timers.isEmpty()) {
-			for (Timer entry : timers) {
-				if (entry != null) {
-					entry.tick();
-				}
+		now++;
+		if (scheduled == 0)
+			return;
+
+		if ((now & MASK) == 0) {
+			// Entering a new span of a level: move its slot of the level above down, highest first
+			if ((now & LEVEL1_SPAN - 1) == 0) {
+				if ((now & LEVEL2_SPAN - 1) == 0)
+					cascade(OVERFLOW, 0);
+				cascade(2, (now >> BITS * 2) & MASK);
+			}
+			cascade(1, (now >> BITS) & MASK);
+		}
+
+		if (wheel[0] != null) {
+			int slot = now & MASK;
+			Timer timer;
+			while ((timer = wheel[0][slot]) != null) {
+				unlink(timer);
+				link(timer, DUE, 0);
 			}
 		}
 	}
 	
-	public Indexer<Timer> timers() {
-		return timers;
+	/**
+	 * @return the timers that ran out and were not cancelled or set again yet, as a copy.
+	 */
+	public List<Timer> expired() {
+		if (expired == 0)
+			return Collections.emptyList();
+
+		Timer[] result = new Timer[expired];
+		int i = 0;
+		for (Timer timer = due; timer != null; timer = timer.next)
+			result[i++] = timer;
+		return Arrays.asList(result);
+	}
+
+	/**
+	 * @return the number of registered timers, expired ones included.
+	 */
+	public int size() {
+		return scheduled + expired;
+	}
+
+	int left(Timer timer) {
+		// A due timer keeps what it was set to, which is 0 unless it was set to less
+		return timer.level == DUE ? timer.ticksWhenDue : timer.deadline - now;
+	}
+
+	void schedule(Timer timer, int ticks) {
+		if (timer.linked)
+			unlink(timer);
+		timer.deadline = now + Math.max(0, ticks);
+		timer.ticksWhenDue = Math.min(0, ticks);
+		insert(timer);
+	}
+
+	private Timer get(TimerKey key) {
+		return timers == null ? null : timers[key.ordinal()];
+	}
+
+	private void unregister(Timer timer) {
+		int left = left(timer);
+		unlink(timer);
+		timers[timer.key().ordinal()] = null;
+		timer.repository = null;
+		timer.ticks(left); // Kept on the timer itself from now on
+	}
+
+	private void insert(Timer timer) {
+		int delta = timer.deadline - now;
+		if (delta <= 0) {
+			link(timer, DUE, 0);
+		} else if (delta < SLOTS) {
+			link(timer, (byte) 0, timer.deadline & MASK);
+		} else if (delta < LEVEL1_SPAN) {
+			link(timer, (byte) 1, (timer.deadline >> BITS) & MASK);
+		} else if (delta < LEVEL2_SPAN) {
+			link(timer, (byte) 2, (timer.deadline >> BITS * 2) & MASK);
+		} else {
+			link(timer, OVERFLOW, 0);
+		}
+	}
+
+	private void cascade(int level, int slot) {
+		Timer timer = head(level, slot);
+		while (timer != null) {
+			Timer next = timer.next;
+			unlink(timer);
+			insert(timer);
+			timer = next;
+		}
+	}
+
+	private Timer head(int level, int slot) {
+		if (level == DUE)
+			return due;
+		if (level == OVERFLOW)
+			return overflow;
+		return wheel[level] == null ? null : wheel[level][slot];
+	}
+
+	private void link(Timer timer, byte level, int slot) {
+		Timer head = head(level, slot);
+		timer.level = level;
+		timer.slot = slot;
+		timer.linked = true;
+		timer.prev = null;
+		timer.next = head;
+		if (head != null)
+			head.prev = timer;
+
+		if (level == DUE) {
+			due = timer;
+			expired++;
+		} else {
+			if (level == OVERFLOW) {
+				overflow = timer;
+			} else {
+				if (wheel[level] == null)
+					wheel[level] = new Timer[SLOTS];
+				wheel[level][slot] = timer;
+			}
+			scheduled++;
+		}
+	}
+
+	private void unlink(Timer timer) {
+		if (timer.next != null)
+			timer.next.prev = timer.prev;
+
+		if (timer.prev != null) {
+			timer.prev.next = timer.next;
+		} else if (timer.level == DUE) {
+			due = timer.next;
+		} else if (timer.level == OVERFLOW) {
+			overflow = timer.next;
+		} else {
+			wheel[timer.level][timer.slot] = timer.next;
+		}
+
+		if (timer.level == DUE)
+			expired--;
+		else
+			scheduled--;
+		timer.prev = timer.next = null;
+		timer.linked = false;
 	}
 	
-}
\ No newline at end of file
+}
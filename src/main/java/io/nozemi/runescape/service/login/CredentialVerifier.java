@@ -0,0 +1,155 @@
+package io.nozemi.runescape.service.login;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks login passwords against their stored hashes on a pool of its own, so slow hashes like BCrypt never occupy the
+ * login workers and the number of hashes computed at once stays bounded.
+ * <p>
+ * A successful check leaves a session token for the account, valid for a short while. A reconnect within that time is
+ * accepted by comparing a keyed hash of the same credentials against the token instead of hashing again, which keeps a
+ * mass reconnect after a restart of the network cheap. Tokens are bound to the password, the stored hash and the client
+ * that logged in, and the key only lives in memory, so they never outlast the process.
+ */
+public class CredentialVerifier {
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final PasswordEncoder encoder;
+    private final ExecutorService pool;
+    private final long tokenLifetime;
+    private final SecretKeySpec key;
+
+    private final Map<String, Token> tokens = new ConcurrentHashMap<>();
+    private volatile int sweepAt = 1024;
+
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder tokenHits = new LongAdder();
+
+    /**
+     * @param threads       the number of hashes computed at once.
+     * @param tokenLifetime milliseconds a successful login can be reconnected to without hashing, 0 to disable.
+     */
+    public CredentialVerifier(PasswordEncoder encoder, int threads, long tokenLifetime) {
+        this.encoder = encoder;
+        this.tokenLifetime = tokenLifetime;
+
+        AtomicInteger count = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "credential-verifier-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, MAC_ALGORITHM);
+    }
+
+    /**
+     * Checks the password, completing on the verifier's pool unless a reconnect could use its session token.
+     *
+     * @param client    identifies the client logging in, a token only serves reconnects of the same client.
+     * @param reconnect whether the client is reconnecting, the only case a session token is accepted for.
+     */
+    public CompletableFuture<Boolean> verify(String username, String password, String hash, String client, boolean reconnect) {
+        String account = username.toLowerCase();
+
+        if (reconnect) {
+            reconnects.increment();
+            Token token = tokens.get(account);
+            if (token != null && token.expires > System.currentTimeMillis()
+                    && MessageDigest.isEqual(token.mac, mac(account, password, hash, client))) {
+                tokenHits.increment();
+                return CompletableFuture.completedFuture(true);
+            }
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            boolean matches = encoder.matches(password, hash);
+            hashes.increment();
+            hashNanos.add(System.nanoTime() - start);
+
+            if (matches && tokenLifetime > 0)
+                issue(account, password, hash, client);
+            return matches;
+        }, pool);
+    }
+
+    /**
+     * Forgets the session of the account, for when its password changes or it gets banned.
+     */
+    public void revoke(String username) {
+        tokens.remove(username.toLowerCase());
+    }
+
+    /**
+     * Stops accepting checks, verify then throws a RejectedExecutionException. Checks already queued still finish, so
+     * every login waiting on one gets its answer.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * @return the verification counters, formatted for logging.
+     */
+    public String summary() {
+        long count = hashes.sum();
+        return String.format("Credentials: %d hashed (%.1fms avg), %d/%d reconnects by token, %d tokens.",
+                count, count == 0 ? 0.0 : hashNanos.sum() / 1e6 / count, tokenHits.sum(), reconnects.sum(), tokens.size());
+    }
+
+    private void issue(String account, String password, String hash, String client) {
+        long now = System.currentTimeMillis();
+        tokens.put(account, new Token(mac(account, password, hash, client), now + tokenLifetime));
+
+        // Expired tokens are dropped whenever the map doubled since the last sweep
+        if (tokens.size() > sweepAt) {
+            tokens.values().removeIf(token -> token.expires <= now);
+            sweepAt = Math.max(1024, tokens.size() * 2);
+        }
+    }
+
+    private byte[] mac(String account, String password, String hash, String client) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            for (String part : new String[] {account, password, hash, client}) {
+                mac.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                mac.update((byte) 0);
+            }
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Token {
+        private final byte[] mac;
+        private final long expires;
+
+        private Token(byte[] mac, long expires) {
+            this.mac = mac;
+            this.expires = expires;
+        }
+    }
+
+}
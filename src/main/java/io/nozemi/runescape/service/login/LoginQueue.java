@@ -0,0 +1,170 @@
+package io.nozemi.runescape.service.login;
+
+import io.nozemi.runescape.net.message.LoginRequestMessage;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Login requests waiting for a worker. New requests are bounded, in total and per IP, and handed out round robin over
+ * the IPs they came from, so one address flooding logins cannot starve the rest. Requests that failed and wait for a
+ * retry sit in a {@link DelayQueue} until their {@link LoginRequestMessage#delayedUntil() delay} passed; a due retry is
+ * handed out before new requests, as it was admitted earlier.
+ */
+final class LoginQueue {
+
+    private final int capacity;
+    private final int perAddress;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    // Guarded by lock
+    private final Map<String, ArrayDeque<LoginRequestMessage>> byAddress = new HashMap<>();
+    private final ArrayDeque<String> turns = new ArrayDeque<>(); // Addresses with requests, in the order they get one served
+    private final DelayQueue<Retry> retries = new DelayQueue<>();
+    private int size;
+    private int peak;
+
+    LoginQueue(int capacity, int perAddress) {
+        this.capacity = capacity;
+        this.perAddress = perAddress;
+    }
+
+    /**
+     * @return false if the queue, or the share of the request's address, is full.
+     */
+    boolean offer(LoginRequestMessage message) {
+        String address = address(message);
+        lock.lock();
+        try {
+            ArrayDeque<LoginRequestMessage> queue = byAddress.get(address);
+            if (size >= capacity || (queue != null && queue.size() >= perAddress))
+                return false;
+
+            if (queue == null) {
+                byAddress.put(address, queue = new ArrayDeque<>());
+                turns.add(address);
+            }
+            queue.add(message);
+            size++;
+            peak = Math.max(peak, size);
+            available.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands the request back once its delay passed. Retries are never rejected, they were admitted before.
+     */
+    void retry(LoginRequestMessage message) {
+        lock.lock();
+        try {
+            retries.add(new Retry(message));
+            size++;
+            peak = Math.max(peak, size);
+            // A waiting worker may be sleeping until a later retry
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a due retry or a new request.
+     */
+    LoginRequestMessage take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                Retry retry = retries.poll();
+                if (retry != null) {
+                    size--;
+                    return retry.message;
+                }
+
+                String address = turns.poll();
+                if (address != null) {
+                    ArrayDeque<LoginRequestMessage> queue = byAddress.get(address);
+                    LoginRequestMessage message = queue.poll();
+                    if (queue.isEmpty())
+                        byAddress.remove(address);
+                    else
+                        turns.add(address);
+                    size--;
+                    return message;
+                }
+
+                Retry next = retries.peek();
+                if (next == null)
+                    available.await();
+                else
+                    available.awaitNanos(next.getDelay(TimeUnit.NANOSECONDS));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of requests waiting, including those waiting for a retry.
+     */
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the most requests that were waiting at once since the last call.
+     */
+    int drainPeak() {
+        lock.lock();
+        try {
+            int result = peak;
+            peak = size;
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String address(LoginRequestMessage message) {
+        SocketAddress address = message.channel().remoteAddress();
+        if (address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress() != null)
+            return ((InetSocketAddress) address).getAddress().getHostAddress();
+        return String.valueOf(address);
+    }
+
+    private static final class Retry implements Delayed {
+        private final LoginRequestMessage message;
+
+        private Retry(LoginRequestMessage message) {
+            this.message = message;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(message.delayedUntil() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(message.delayedUntil(), ((Retry) other).message.delayedUntil());
+        }
+    }
+
+}
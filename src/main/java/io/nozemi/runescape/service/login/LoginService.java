@@ -1,15 +1,23 @@
 package io.nozemi.runescape.service.login;
 
+import com.typesafe.config.Config;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.nozemi.runescape.GameInitializer;
+import io.nozemi.runescape.handlers.impl.ConfigHandler;
 import io.nozemi.runescape.io.RSBuffer;
 import io.nozemi.runescape.model.entity.Player;
 import io.nozemi.runescape.model.instance.InstancedMap;
 import io.nozemi.runescape.net.ServerHandler;
+import io.nozemi.runescape.net.future.ClosingChannelFuture;
 import io.nozemi.runescape.net.message.LoginRequestMessage;
 import io.nozemi.runescape.net.message.game.Action;
 import io.nozemi.runescape.net.message.game.command.DisplayMap;
 import io.nozemi.runescape.net.message.game.command.SetRealm;
 import io.nozemi.runescape.service.Service;
+import io.nozemi.runescape.service.serializers.BinaryFileSerializer;
+import io.nozemi.runescape.service.serializers.JSONFileSerializer;
+import io.nozemi.runescape.service.serializers.PlayerLoadResult;
 import io.nozemi.runescape.service.serializers.PlayerSerializer;
 import io.nozemi.runescape.service.serializers.SpringSerializer;
 import io.nozemi.runescape.tasksystem.InterruptibleTask;
@@ -20,42 +28,90 @@ import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.Optional;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 @Component
-public class LoginService implements Service, BeanFactoryAware {
+public class LoginService implements Service, BeanFactoryAware, DisposableBean {
 
     private static final Logger logger = LogManager.getLogger(LoginService.class);
 
     private BeanFactory beanFactory;
 
-    private LinkedBlockingQueue<LoginRequestMessage> messages = new LinkedBlockingQueue<>();
+    /**
+     * Defaults for login.workers, login.queue.capacity and login.queue.per-address.
+     */
+    private static final int DEFAULT_WORKERS = 3;
+    private static final int DEFAULT_CAPACITY = 1000;
+    private static final int DEFAULT_PER_ADDRESS = 10;
 
-    private Executor executor;
+    private LoginQueue queue;
+
+    private int workers;
+
+    private ExecutorService executor;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
 
     private static PlayerSerializer serializer;
 
+    private final SpringSerializer springSerializer;
+
     @Autowired
     public LoginService(SpringSerializer springSerializer) {
+        this.springSerializer = springSerializer;
         serializer = springSerializer;
     }
 
     @Override
     public void setup() {
+        // Services are set up while the handlers initialize, before GameInitializer has published the config
+        Optional<Config> config = GameInitializer.handler(ConfigHandler.class).map(ConfigHandler::config);
+
+        workers = intSetting(config, "login.workers", DEFAULT_WORKERS);
+        queue = new LoginQueue(intSetting(config, "login.queue.capacity", DEFAULT_CAPACITY),
+                intSetting(config, "login.queue.per-address", DEFAULT_PER_ADDRESS));
+
+        String storage = config
+                .filter(c -> c.hasPath("character.storage"))
+                .map(c -> c.getString("character.storage"))
+                .orElse("spring");
+        switch (storage) {
+            case "json":
+                serializer = new JSONFileSerializer();
+                break;
+            case "binary":
+                serializer = new BinaryFileSerializer();
+                break;
+            case "spring":
+                serializer = springSerializer;
+                break;
+            default:
+                throw new RuntimeException("Unknown character.storage '" + storage + "', expected json, binary or spring.");
+        }
+
         logger.info("Using {} to serialize and deserialize player data.", serializer.getClass().getSimpleName());
     }
 
     @Override
     public boolean start() {
-        executor = Executors.newFixedThreadPool(2);
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, r -> new Thread(r, "login-worker-" + threads.incrementAndGet()));
 
-        for (int i = 0; i < 3; i++) {
+        for (int i = 0; i < workers; i++) {
             LoginWorker loginWorker = beanFactory.getBean(LoginWorker.class);
             loginWorker.loginService(this);
             executor.execute(loginWorker);
@@ -66,7 +122,9 @@ public class LoginService implements Service, BeanFactoryAware {
 
     @Override
     public boolean stop() {
-        return false;
+        if (executor != null)
+            executor.shutdownNow();
+        return true;
     }
 
     @Override
@@ -74,8 +132,68 @@ public class LoginService implements Service, BeanFactoryAware {
         return true;
     }
 
+    @Override
+    public void destroy() {
+        stop();
+
+        // The spring serializer is a bean and stopped by the context, file serializers are ours to stop
+        if (serializer != springSerializer) {
+            serializer.stop();
+        }
+    }
+
+    /**
+     * Queues the request for a worker, or answers it with {@link PlayerLoadResult#LOGIN_THROTTLE} if too many logins
+     * are waiting already.
+     */
     public void enqueue(LoginRequestMessage message) {
-        messages.add(message);
+        message.receivedAt(System.nanoTime());
+
+        if (!queue.offer(message)) {
+            throttled.increment();
+            ByteBuf resp = message.channel().alloc().buffer(1).writeByte(PlayerLoadResult.LOGIN_THROTTLE.code());
+            message.channel().writeAndFlush(resp).addListener(new ClosingChannelFuture());
+            return;
+        }
+        accepted.increment();
+    }
+
+    /**
+     * Hands a request that could not be processed now back to the queue, to be taken again after the delay.
+     */
+    void retry(LoginRequestMessage message, long delay) {
+        retried.increment();
+        message.addRetry();
+        message.delayedUntil(System.currentTimeMillis() + delay);
+        queue.retry(message);
+    }
+
+    /**
+     * Waits for the next request to process.
+     */
+    LoginRequestMessage take() throws InterruptedException {
+        return queue.take();
+    }
+
+    /**
+     * Records that the request was processed, for the latency metrics.
+     */
+    void processed(LoginRequestMessage message) {
+        long latency = System.nanoTime() - message.receivedAt();
+        completed.increment();
+        latencyNanos.add(latency);
+        maxLatencyNanos.accumulate(latency);
+    }
+
+    /**
+     * @return the login counters, formatted for logging. The peak queue depth and max latency are reset.
+     */
+    public String summary() {
+        long done = completed.sum();
+        return String.format("Logins: %d accepted, %d throttled, %d retries, %d processed. Queue: %d waiting, %d peak. "
+                        + "Latency: %.1fms avg, %.1fms max.",
+                accepted.sum(), throttled.sum(), retried.sum(), done, queue.size(), queue.drainPeak(),
+                done == 0 ? 0.0 : latencyNanos.sum() / 1e6 / done, maxLatencyNanos.getThenReset() / 1e6);
     }
 
     public void complete(Player player, LoginRequestMessage message) {
@@ -111,14 +229,14 @@ public class LoginService implements Service, BeanFactoryAware {
         });
     }
 
-    public LinkedBlockingQueue<LoginRequestMessage> messages() {
-        return messages;
-    }
-
     public static PlayerSerializer serializer() {
         return serializer;
     }
 
+    private static int intSetting(Optional<Config> config, String path, int defaultValue) {
+        return config.filter(c -> c.hasPath(path)).map(c -> c.getInt(path)).orElse(defaultValue);
+    }
+
     @Override
     public void setBeanFactory(@NotNull BeanFactory beanFactory) throws BeansException {
         this.beanFactory = beanFactory;
@@ -38,6 +38,13 @@ public class LoginWorker implements Runnable, BeanFactoryAware {
 
     public static boolean acceptLogins = false;
 
+    /**
+     * Attempts before a login that keeps failing to load is answered with an error, and the delay before the first
+     * retry, which doubles with every attempt.
+     */
+    private static final int MAX_RETRIES = 5;
+    private static final long RETRY_DELAY = 100;
+
     private BeanFactory beanFactory;
 
     private LoginService loginService;
@@ -57,9 +64,11 @@ public class LoginWorker implements Runnable, BeanFactoryAware {
 
     @Override
     public void run() {
-        while(true) {
+        while(!Thread.currentThread().isInterrupted()) {
             try {
                 processLoginJob();
+            } catch(InterruptedException e) {
+                return;
             } catch(Exception e) {
                 logger.error("Error processing login worker job!", e);
             }
@@ -67,11 +76,11 @@ public class LoginWorker implements Runnable, BeanFactoryAware {
     }
 
     private void processLoginJob() throws Exception {
-        LoginRequestMessage message = loginService.messages().take();
+        LoginRequestMessage message = loginService.take();
 
-        if(message.delayedUntil() > System.currentTimeMillis()) {
-            loginService.enqueue(message);
-            Thread.sleep(30); // TODO: See what to do here later...
+        // The client gave up waiting, it will have sent a new request if it is still around
+        if(!message.channel().isActive()) {
+            loginService.processed(message);
             return;
         }
 
@@ -110,7 +119,13 @@ public class LoginWorker implements Runnable, BeanFactoryAware {
         //player.world(world);
         player.tile(new Tile(3222, 3222));
 
+        // A save from the previous session may still be queued
+        LoginService.serializer().awaitSaved(player.username());
+
+        // The serializer may answer later from another thread, e.g. once the password was hashed
         boolean success = LoginService.serializer().loadPlayer(player, null, message.password(), result -> {
+            loginService.processed(message);
+
             if(!result.equals(PlayerLoadResult.OK)) {
                 ByteBuf resp = message.channel().alloc().buffer(1).writeByte(result.code());
                 message.channel().writeAndFlush(resp).addListener(new ClosingChannelFuture());
@@ -163,9 +178,17 @@ public class LoginWorker implements Runnable, BeanFactoryAware {
             });
         }, message);
 
-        if(!success) {
-            loginService.enqueue(message);
-            Thread.sleep(100); // TODO: Look into this...
+        if(success) {
+            return;
+        }
+
+        if(message.retries() < MAX_RETRIES) {
+            loginService.retry(message, RETRY_DELAY << message.retries());
+        } else {
+            logger.error("Giving up on the login of {} after {} attempts.", message.username(), message.retries() + 1);
+            ByteBuf resp = message.channel().alloc().buffer(1).writeByte(PlayerLoadResult.ERROR_LOADING.code());
+            message.channel().writeAndFlush(resp).addListener(new ClosingChannelFuture());
+            loginService.processed(message);
         }
     }
 
@@ -0,0 +1,99 @@
+package io.nozemi.runescape.service.serializers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.nozemi.runescape.model.AttributeKey;
+import io.nozemi.runescape.model.entity.Player;
+import io.nozemi.runescape.model.uid.UIDProvider;
+import io.nozemi.runescape.model.uid.providers.SimpleUIDProvider;
+import io.nozemi.runescape.net.message.LoginRequestMessage;
+import io.nozemi.runescape.orm.models.Character;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stores characters as local files in the {@link CharacterCodec binary format}, for single-server setups like
+ * {@link JSONFileSerializer}. Characters that only have a JSON file yet are converted on their first load; the JSON
+ * file is left in place.
+ */
+public class BinaryFileSerializer extends PlayerSerializer {
+
+    private static final Logger logger = LogManager.getLogger(BinaryFileSerializer.class);
+
+    private final Path characterFolder = Paths.get("data/characters");
+
+    private final ObjectMapper jsonMapper = JSONFileSerializer.createMapper();
+
+    public BinaryFileSerializer() {
+        try {
+            Files.createDirectories(characterFolder);
+        } catch (IOException e) {
+            logger.error("Failed to create the character folder {}.", characterFolder, e);
+        }
+    }
+
+    @Override
+    public boolean loadPlayer(Player player, Object uid, String password, Consumer<PlayerLoadResult> fn, LoginRequestMessage loginRequestMessage) {
+        Path characterFile = characterFolder.resolve(player.username() + ".bin");
+        Path jsonFile = characterFolder.resolve(player.username() + ".json");
+
+        try {
+            if (Files.exists(characterFile)) {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(characterFile))) {
+                    CharacterCodec.read(in).getPlayer(player);
+                }
+            } else if (Files.exists(jsonFile)) {
+                Character character = jsonMapper.readValue(jsonFile.toFile(), Character.class);
+                write(character);
+                logger.info("Migrated character '{}' from JSON to the binary format.", player.username());
+                character.getPlayer(player);
+            } else {
+                UIDProvider uidProvider = new SimpleUIDProvider();
+                player.id(uidProvider.acquire(player));
+                player.putattrib(AttributeKey.NEW_ACCOUNT, true);
+                this.createCharacter(player);
+                this.savePlayer(player, false);
+            }
+        } catch (IOException e) {
+            // Letting them in blank would have the next save overwrite their file
+            logger.error("Failed to load character: '{}'.", player.username(), e);
+            fn.accept(PlayerLoadResult.ERROR_LOADING);
+            return true;
+        }
+
+        fn.accept(PlayerLoadResult.OK);
+        return true;
+    }
+
+    @Override
+    protected void write(List<Character> characters) throws IOException {
+        for (Character character : characters) {
+            write(character);
+        }
+    }
+
+    /**
+     * Writes the character to a temporary file first, so a crash mid-write never leaves a truncated save behind.
+     */
+    private void write(Character character) throws IOException {
+        Path characterFile = characterFolder.resolve(character.getUsername() + ".bin");
+        Path temp = characterFolder.resolve(character.getUsername() + ".bin.tmp");
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            CharacterCodec.write(character, out);
+        }
+        Files.move(temp, characterFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
@@ -0,0 +1,308 @@
+package io.nozemi.runescape.service.serializers;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.nozemi.runescape.model.entity.player.Skills;
+import io.nozemi.runescape.model.entity.player.Varps;
+import io.nozemi.runescape.orm.models.Character;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary form of a {@link Character}. A header of magic and schema version is followed by the core fields and
+ * then tagged sections, each prefixed with its length so readers skip sections they do not know. Counts and values are
+ * varints: varps only store the non-zero entries as index deltas, item containers only their occupied slots.
+ * <p>
+ * A character is encoded into a heap buffer and handed to the stream in one write, and read back from one read of the
+ * stream, as going through data streams byte by byte cost more than the encoding itself.
+ * <p>
+ * Version 1 layout, after the header:
+ * <pre>
+ * id, userId, username (length, UTF-8), x, y, level, run energy, special energy
+ * (tag, length, payload)*, END
+ * </pre>
+ */
+final class CharacterCodec {
+
+    static final int MAGIC = 0x52534348;
+    static final int VERSION = 1;
+
+    private static final int END = 0;
+    private static final int SKILLS = 1;
+    private static final int VARPS = 2;
+    private static final int INVENTORY = 3;
+    private static final int EQUIPMENT = 4;
+
+    // Skill xp is stored as varint tenths when every value is an exact tenth, else as raw doubles
+    private static final int XP_TENTHS = 0;
+    private static final int XP_DOUBLES = 1;
+
+    // Container sizes as created by Player, bounding what a file can make us allocate
+    private static final int INVENTORY_SLOTS = 28;
+    private static final int EQUIPMENT_SLOTS = 14;
+
+    private CharacterCodec() {
+    }
+
+    /**
+     * Writes the character to the stream, without closing it.
+     */
+    static void write(Character character, OutputStream stream) throws IOException {
+        ByteBuf out = Unpooled.buffer(1024);
+        ByteBuf section = Unpooled.buffer(512);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+
+        writeVarInt(out, character.getId());
+        writeVarInt(out, character.getUserId());
+        byte[] username = character.getUsername().getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, username.length);
+        out.writeBytes(username);
+        writeVarInt(out, character.getPosX());
+        writeVarInt(out, character.getPosY());
+        out.writeByte(character.getPosZ());
+        out.writeDouble(character.getRunEnergy());
+        out.writeDouble(character.getSpecialEnergy());
+
+        if (character.getSkillXp() != null && character.getSkillLevels() != null) {
+            writeSkills(section, character.getSkillXp(), character.getSkillLevels());
+            flushSection(out, SKILLS, section);
+        }
+        if (character.getVarps() != null) {
+            writeVarps(section, character.getVarps());
+            flushSection(out, VARPS, section);
+        }
+        if (character.getInventory() != null) {
+            writeContainer(section, character.getInventory());
+            flushSection(out, INVENTORY, section);
+        }
+        if (character.getEquipment() != null) {
+            writeContainer(section, character.getEquipment());
+            flushSection(out, EQUIPMENT, section);
+        }
+
+        out.writeByte(END);
+        stream.write(out.array(), out.arrayOffset() + out.readerIndex(), out.readableBytes());
+    }
+
+    /**
+     * Reads a character from the rest of the stream.
+     */
+    static Character read(InputStream stream) throws IOException {
+        ByteBuf in = Unpooled.wrappedBuffer(stream.readAllBytes());
+        try {
+            return read(in);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated character file", e);
+        }
+    }
+
+    private static Character read(ByteBuf in) throws IOException {
+        if (in.readableBytes() < 5 || in.readInt() != MAGIC)
+            throw new IOException("Not a binary character file");
+
+        int version = in.readUnsignedByte();
+        if (version > VERSION)
+            throw new IOException("Unsupported character file version " + version);
+
+        Character character = new Character();
+        character.setId(readVarInt(in));
+        character.setUserId(readVarInt(in));
+        character.setUsername(in.readCharSequence(readVarInt(in), StandardCharsets.UTF_8).toString());
+        character.setPosX(readVarInt(in));
+        character.setPosY(readVarInt(in));
+        character.setPosZ(in.readUnsignedByte());
+        character.setRunEnergy(in.readDouble());
+        character.setSpecialEnergy(in.readDouble());
+
+        for (int tag = in.readUnsignedByte(); tag != END; tag = in.readUnsignedByte()) {
+            int length = readVarInt(in);
+            switch (tag) {
+                case SKILLS:
+                    readSkills(in, character);
+                    break;
+                case VARPS:
+                    character.setVarps(readVarps(in));
+                    break;
+                case INVENTORY:
+                    character.setInventory(readContainer(in, INVENTORY_SLOTS));
+                    break;
+                case EQUIPMENT:
+                    character.setEquipment(readContainer(in, EQUIPMENT_SLOTS));
+                    break;
+                default:
+                    in.skipBytes(length);
+                    break;
+            }
+        }
+
+        return character;
+    }
+
+    private static void flushSection(ByteBuf out, int tag, ByteBuf section) {
+        out.writeByte(tag);
+        writeVarInt(out, section.readableBytes());
+        out.writeBytes(section);
+        section.clear();
+    }
+
+    private static void writeSkills(ByteBuf out, double[] xp, int[] levels) {
+        int count = Math.min(xp.length, levels.length);
+        writeVarInt(out, count);
+        for (int i = 0; i < count; i++) {
+            writeVarInt(out, levels[i]);
+        }
+
+        boolean tenths = true;
+        for (int i = 0; i < count && tenths; i++) {
+            double scaled = xp[i] * 10;
+            tenths = scaled >= 0 && scaled <= Integer.MAX_VALUE && scaled == Math.rint(scaled) && (long) scaled / 10.0 == xp[i];
+        }
+
+        out.writeByte(tenths ? XP_TENTHS : XP_DOUBLES);
+        for (int i = 0; i < count; i++) {
+            if (tenths)
+                writeVarInt(out, (int) (xp[i] * 10));
+            else
+                out.writeDouble(xp[i]);
+        }
+    }
+
+    private static void readSkills(ByteBuf in, Character character) throws IOException {
+        int count = readLength(in, Skills.SKILL_COUNT);
+        int[] levels = new int[count];
+        double[] xp = new double[count];
+        for (int i = 0; i < count; i++) {
+            levels[i] = readVarInt(in);
+        }
+
+        boolean tenths = in.readUnsignedByte() == XP_TENTHS;
+        for (int i = 0; i < count; i++) {
+            xp[i] = tenths ? readVarInt(in) / 10.0 : in.readDouble();
+        }
+
+        character.setSkillLevels(levels);
+        character.setSkillXp(xp);
+    }
+
+    /**
+     * Length, number of non-zero entries, then per entry the distance to the previous one and the zigzag value.
+     */
+    private static void writeVarps(ByteBuf out, int[] varps) {
+        int used = 0;
+        for (int value : varps) {
+            if (value != 0)
+                used++;
+        }
+
+        writeVarInt(out, varps.length);
+        writeVarInt(out, used);
+        int last = -1;
+        for (int i = 0; i < varps.length; i++) {
+            if (varps[i] != 0) {
+                writeVarInt(out, i - last);
+                writeVarInt(out, (varps[i] << 1) ^ (varps[i] >> 31));
+                last = i;
+            }
+        }
+    }
+
+    private static int[] readVarps(ByteBuf in) throws IOException {
+        int[] varps = new int[readLength(in, Varps.SIZE)];
+        int used = readLength(in, varps.length);
+        int index = -1;
+        for (int i = 0; i < used; i++) {
+            index = readIndex(in, index, varps.length);
+            int zigzag = readVarInt(in);
+            varps[index] = (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+        return varps;
+    }
+
+    /**
+     * Slot count, occupied slots, then per occupied slot the distance to the previous one, the id and the amount.
+     */
+    private static void writeContainer(ByteBuf out, int[] packed) {
+        int slots = packed.length / 2;
+        int used = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            if (packed[slot * 2] >= 0)
+                used++;
+        }
+
+        writeVarInt(out, slots);
+        writeVarInt(out, used);
+        int last = -1;
+        for (int slot = 0; slot < slots; slot++) {
+            if (packed[slot * 2] >= 0) {
+                writeVarInt(out, slot - last);
+                writeVarInt(out, packed[slot * 2]);
+                writeVarInt(out, packed[slot * 2 + 1]);
+                last = slot;
+            }
+        }
+    }
+
+    private static int[] readContainer(ByteBuf in, int maxSlots) throws IOException {
+        int slots = readLength(in, maxSlots);
+        int[] packed = new int[slots * 2];
+        for (int slot = 0; slot < slots; slot++) {
+            packed[slot * 2] = -1;
+        }
+
+        int used = readLength(in, slots);
+        int slot = -1;
+        for (int i = 0; i < used; i++) {
+            slot = readIndex(in, slot, slots);
+            packed[slot * 2] = readVarInt(in);
+            packed[slot * 2 + 1] = readVarInt(in);
+        }
+        return packed;
+    }
+
+    /**
+     * Reads a count or array length, which has to be at most max.
+     */
+    private static int readLength(ByteBuf in, int max) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > max)
+            throw new IOException("Corrupt character file, length " + length + " exceeds " + max);
+        return length;
+    }
+
+    /**
+     * Reads the distance to the previous index, and returns the index it leads to, which has to be below size.
+     */
+    private static int readIndex(ByteBuf in, int previous, int size) throws IOException {
+        int index = previous + readVarInt(in);
+        if (index <= previous || index >= size)
+            throw new IOException("Corrupt character file, index " + index + " out of " + size);
+        return index;
+    }
+
+    /**
+     * Writes the value 7 bits at a time, low bits first. Negative values take 5 bytes.
+     */
+    private static void writeVarInt(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuf in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+}
@@ -14,6 +14,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -26,10 +27,7 @@ public class JSONFileSerializer extends PlayerSerializer {
 	
 	private static final Logger logger = LogManager.getLogger(JSONFileSerializer.class);
 
-	private final ObjectMapper mapper = new ObjectMapper()
-			.findAndRegisterModules()
-			.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
-			.enable(SerializationFeature.INDENT_OUTPUT);
+	private final ObjectMapper mapper = createMapper();
 	
 	/**
 	 * The folder containing the character files.
@@ -65,14 +63,21 @@ public class JSONFileSerializer extends PlayerSerializer {
 	}
 	
 	@Override
-	public void savePlayer(Player player, boolean removeOnline) {
-		File characterFile = new File(characterFolder + File.separator + player.username() + ".json");
-		Character character = new Character(player);
-		try {
+	protected void write(List<Character> characters) throws IOException {
+		for (Character character : characters) {
+			File characterFile = new File(characterFolder + File.separator + character.getUsername() + ".json");
 			mapper.writeValue(characterFile, character);
-			logger.info("Saved character: {}", player.username());
-		} catch (IOException e) {
-			logger.error("Failed to save character...", e);
+			logger.info("Saved character: {}", character.getUsername());
 		}
 	}
+
+	/**
+	 * @return a mapper for the character files, also used to migrate them to other formats.
+	 */
+	static ObjectMapper createMapper() {
+		return new ObjectMapper()
+				.findAndRegisterModules()
+				.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+				.enable(SerializationFeature.INDENT_OUTPUT);
+	}
 }
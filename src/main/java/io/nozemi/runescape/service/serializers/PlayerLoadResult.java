@@ -9,6 +9,7 @@ public enum PlayerLoadResult {
 	BANNED(4),
 	ALREADY_ONLINE(5),
 	WORLD_FULL(7),
+	UPDATING(14),
 	UNREGISTERED_ACCOUNT(10),
 	LOGIN_THROTTLE(16),
 	CLOSED_BETA(19),
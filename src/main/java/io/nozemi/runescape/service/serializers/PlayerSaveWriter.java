@@ -0,0 +1,287 @@
+package io.nozemi.runescape.service.serializers;
+
+import io.nozemi.runescape.orm.models.Character;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes player snapshots on a thread of its own, so saving never blocks the game thread. Snapshots are taken by the
+ * caller and queued by username: a player saved again before the previous snapshot was written only has the newest one
+ * written. The queue is drained in batches in the order players were first queued, one batch at a time, so saves of one
+ * player always complete in order.
+ * <p>
+ * A failed batch is split in halves and retried right away, which isolates a snapshot that cannot be written in a few
+ * writes while the rest of its batch saves. A single snapshot that fails is set aside and retried after a delay, while
+ * other players keep saving; it is given up on after {@link #MAX_ATTEMPTS}, completing its future exceptionally.
+ */
+final class PlayerSaveWriter implements Runnable {
+
+    private static final Logger logger = LogManager.getLogger(PlayerSaveWriter.class);
+
+    private static final int BATCH_SIZE = 50;
+    private static final long RETRY_DELAY = 5_000;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long STOP_TIMEOUT = 30_000;
+
+    private final PlayerSerializer serializer;
+    private final Thread thread;
+
+    // Guarded by this
+    private final LinkedHashMap<String, PendingSave> pending = new LinkedHashMap<>();
+    private final Map<String, PendingSave> writing = new HashMap<>();
+    private final ArrayDeque<List<PendingSave>> retries = new ArrayDeque<>(); // Halves of failed batches, written first
+    private final ArrayDeque<PendingSave> delayed = new ArrayDeque<>(); // Failed single snapshots, by retry time
+    private boolean running = true;
+    private boolean stopped; // The thread is done, saves can only be written directly
+
+    private long saves;
+    private long coalesced;
+    private long batches;
+    private long failures; // Failed writes of a single snapshot
+    private long givenUp;
+
+    PlayerSaveWriter(PlayerSerializer serializer) {
+        this.serializer = serializer;
+        this.thread = new Thread(this, "player-save-writer");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Queues the snapshot, replacing one of the same player that was not written yet. Once the thread is done, the
+     * snapshot is written right away on the calling thread instead.
+     */
+    void enqueue(Character character) {
+        synchronized (this) {
+            if (!stopped) {
+                saves++;
+                PendingSave previous = pending.get(character.getUsername());
+                if (previous != null) {
+                    previous.character = character;
+                    coalesced++;
+                } else {
+                    pending.put(character.getUsername(), new PendingSave(character));
+                }
+                notifyAll();
+                return;
+            }
+        }
+
+        try {
+            serializer.write(List.of(character));
+        } catch (Exception e) {
+            logger.error("Failed to save character '{}' after the save writer stopped.", character.getUsername(), e);
+        }
+    }
+
+    /**
+     * Waits until the player has no queued or unfinished save, so a new session never loads older data.
+     */
+    void await(String username, long timeout) {
+        CompletableFuture<Void> done;
+        synchronized (this) {
+            PendingSave save = pending.containsKey(username) ? pending.get(username) : writing.get(username);
+            if (save == null)
+                return;
+            done = save.done;
+        }
+
+        try {
+            done.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            logger.warn("Gave up waiting on the save of '{}'.", username, e);
+        }
+    }
+
+    /**
+     * Writes everything still queued and stops the thread.
+     *
+     * @return false if the queue could not be drained in time.
+     */
+    boolean stop() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+
+            if (thread.getState() == Thread.State.NEW) {
+                stopped = true;
+                return true;
+            }
+        }
+
+        try {
+            thread.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            if (!pending.isEmpty() || !writing.isEmpty()) {
+                logger.error("Stopped with {} player saves unwritten: {}.", pending.size() + writing.size(), pending.keySet());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            drain();
+        } finally {
+            synchronized (this) {
+                stopped = true;
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            List<PendingSave> batch;
+            synchronized (this) {
+                batch = next();
+                while (batch == null && running) {
+                    try {
+                        wait(delayed.isEmpty() ? 0 : Math.max(1, delayed.peek().retryAt - System.currentTimeMillis()));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    batch = next();
+                }
+
+                if (batch == null) {
+                    // Stopping: retry what was set aside once more, without waiting on it
+                    if (delayed.isEmpty()) {
+                        stopped = true;
+                        return;
+                    }
+                    batch = retryDelayed();
+                }
+            }
+
+            List<Character> characters = new ArrayList<>(batch.size());
+            for (PendingSave save : batch) {
+                characters.add(save.character);
+            }
+
+            try {
+                serializer.write(characters);
+                synchronized (this) {
+                    batches++;
+                    batch.forEach(save -> writing.remove(save.character.getUsername()));
+                }
+                batch.forEach(save -> save.done.complete(null));
+            } catch (Exception e) {
+                failed(batch, e);
+            }
+        }
+    }
+
+    /**
+     * @return the next batch to write, or null if there is none yet.
+     */
+    private List<PendingSave> next() {
+        if (!retries.isEmpty())
+            return retries.poll();
+
+        if (!delayed.isEmpty() && delayed.peek().retryAt <= System.currentTimeMillis())
+            return retryDelayed();
+
+        List<PendingSave> batch = new ArrayList<>(BATCH_SIZE);
+        for (Iterator<PendingSave> it = pending.values().iterator(); it.hasNext() && batch.size() < BATCH_SIZE; ) {
+            PendingSave save = it.next();
+            if (writing.containsKey(save.character.getUsername()))
+                continue; // An older snapshot was set aside, which has to be written (or given up on) first
+
+            it.remove();
+            writing.put(save.character.getUsername(), save);
+            batch.add(save);
+        }
+        return batch.isEmpty() ? null : batch;
+    }
+
+    /**
+     * Takes the first snapshot set aside, or a newer snapshot of the same player that came in meanwhile instead.
+     */
+    private List<PendingSave> retryDelayed() {
+        PendingSave save = delayed.poll();
+        String username = save.character.getUsername();
+
+        PendingSave newer = pending.remove(username);
+        if (newer != null) {
+            CompletableFuture<Void> superseded = save.done;
+            newer.done.whenComplete((v, t) -> {
+                if (t == null)
+                    superseded.complete(null);
+                else
+                    superseded.completeExceptionally(t);
+            });
+            writing.put(username, newer);
+            return List.of(newer);
+        }
+        return List.of(save);
+    }
+
+    /**
+     * Splits a failed batch in halves to be retried first. A single snapshot is set aside to be retried after a delay,
+     * or given up on after {@link #MAX_ATTEMPTS} or once stopping.
+     */
+    private synchronized void failed(List<PendingSave> batch, Exception cause) {
+        if (batch.size() > 1) {
+            logger.warn("Failed to save {} characters, retrying them in halves.", batch.size(), cause);
+            int half = batch.size() / 2;
+            retries.addFirst(new ArrayList<>(batch.subList(half, batch.size())));
+            retries.addFirst(new ArrayList<>(batch.subList(0, half)));
+            return;
+        }
+
+        PendingSave save = batch.get(0);
+        String username = save.character.getUsername();
+        failures++;
+
+        if (++save.attempts >= MAX_ATTEMPTS || !running) {
+            logger.error("Gave up on saving character '{}' after {} attempts.", username, save.attempts, cause);
+            givenUp++;
+            writing.remove(username);
+            save.done.completeExceptionally(cause);
+            return;
+        }
+
+        logger.error("Failed to save character '{}', attempt {} of {}.", username, save.attempts, MAX_ATTEMPTS, cause);
+        save.retryAt = System.currentTimeMillis() + RETRY_DELAY;
+        delayed.add(save);
+    }
+
+    /**
+     * @return the save counters, formatted for logging.
+     */
+    synchronized String summary() {
+        return String.format("Player saves: %d requested, %d coalesced, %d batches, %d failures, %d given up, %d queued.",
+                saves, coalesced, batches, failures, givenUp, pending.size() + delayed.size());
+    }
+
+    private static final class PendingSave {
+        private Character character;
+        private int attempts;
+        private long retryAt;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private PendingSave(Character character) {
+            this.character = character;
+        }
+    }
+
+}
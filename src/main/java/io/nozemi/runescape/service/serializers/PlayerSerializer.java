@@ -9,18 +9,64 @@ import io.nozemi.runescape.model.uid.UIDProvider;
 import io.nozemi.runescape.net.message.LoginRequestMessage;
 import io.nozemi.runescape.service.Service;
 import io.nozemi.runescape.orm.models.Character;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.function.Consumer;
 
 @Component
-public abstract class PlayerSerializer implements Service {
+public abstract class PlayerSerializer implements Service, DisposableBean {
+
+    /**
+     * How long a login waits on a save of the same player from a previous session.
+     */
+    private static final long LOGIN_SAVE_TIMEOUT = 10_000;
 
     protected UIDProvider uidProvider;
 
+    // Guarded by this, created on the first save so idle serializers never start a thread
+    private PlayerSaveWriter writer;
+    private boolean stopped;
+
     public abstract boolean loadPlayer(Player player, Object uid, String password, Consumer<PlayerLoadResult> fn, LoginRequestMessage loginRequestMessage);
 
-    public abstract void savePlayer(Player player, boolean removeOnline);
+    /**
+     * Snapshots the player on the calling thread and queues the snapshot to be written in the background.
+     */
+    public void savePlayer(Player player, boolean removeOnline) {
+        writer().enqueue(new Character(player));
+    }
+
+    /**
+     * Writes a batch of snapshots, each of a different player. Called from the save writer thread, one batch at a time.
+     */
+    protected abstract void write(List<Character> characters) throws Exception;
+
+    /**
+     * Blocks until earlier saves of the player are written, so loading never sees older data than the last logout.
+     */
+    public void awaitSaved(String username) {
+        PlayerSaveWriter writer;
+        synchronized (this) {
+            writer = this.writer;
+        }
+
+        if (writer != null)
+            writer.await(username, LOGIN_SAVE_TIMEOUT);
+    }
+
+    /**
+     * @return the save counters, formatted for logging.
+     */
+    public String saveSummary() {
+        PlayerSaveWriter writer;
+        synchronized (this) {
+            writer = this.writer;
+        }
+
+        return writer == null ? "Player saves: none yet." : writer.summary();
+    }
 
     @Override
     public void setup() {
@@ -39,7 +85,33 @@ public abstract class PlayerSerializer implements Service {
 
     @Override
     public boolean stop() {
-        return true;
+        PlayerSaveWriter writer;
+        synchronized (this) {
+            stopped = true;
+            writer = this.writer;
+        }
+
+        return writer == null || writer.stop();
+    }
+
+    @Override
+    public void destroy() {
+        // Runs before the data source closes, as the serializer depends on it
+        stop();
+    }
+
+    /**
+     * @return the save writer, started on first use. Once stopped, a new writer saves on the calling thread instead.
+     */
+    private synchronized PlayerSaveWriter writer() {
+        if (writer == null) {
+            writer = new PlayerSaveWriter(this);
+            if (stopped)
+                writer.stop();
+            else
+                writer.start();
+        }
+        return writer;
     }
 
     protected Character createCharacter(Player player) {
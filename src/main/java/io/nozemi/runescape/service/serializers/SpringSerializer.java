@@ -1,7 +1,9 @@
 package io.nozemi.runescape.service.serializers;
 
 import com.warrenstrange.googleauth.GoogleAuthenticator;
+import com.typesafe.config.Config;
 import io.nozemi.runescape.GameInitializer;
+import io.nozemi.runescape.handlers.impl.ConfigHandler;
 import io.nozemi.runescape.model.AttributeKey;
 import io.nozemi.runescape.model.entity.Player;
 import io.nozemi.runescape.net.message.LoginRequestMessage;
@@ -9,58 +11,125 @@ import io.nozemi.runescape.orm.models.User;
 import io.nozemi.runescape.orm.repositories.CharactersRepository;
 import io.nozemi.runescape.orm.models.Character;
 import io.nozemi.runescape.orm.repositories.UsersRepository;
+import io.nozemi.runescape.service.login.CredentialVerifier;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Component
 public class SpringSerializer extends PlayerSerializer {
 
     private final static Logger logger = LogManager.getLogger(SpringSerializer.class);
 
+    /**
+     * Minutes a reconnect can skip hashing the password after a successful login, unless account.reconnect-window is set.
+     */
+    private static final long DEFAULT_RECONNECT_WINDOW = 5;
+
     private final CharactersRepository charactersRepository;
     private final UsersRepository usersRepository;
     private final PasswordEncoder passwordEncoder;
     private final GoogleAuthenticator authenticaor;
+    private final TransactionTemplate transactions;
+
+    private boolean authenticate;
+    private CredentialVerifier credentials;
 
     @Autowired
-    public SpringSerializer(CharactersRepository charactersRepository, UsersRepository usersRepository) {
+    public SpringSerializer(CharactersRepository charactersRepository, UsersRepository usersRepository, PlatformTransactionManager transactionManager) {
         this.charactersRepository = charactersRepository;
         this.usersRepository = usersRepository;
+        this.transactions = new TransactionTemplate(transactionManager);
         this.passwordEncoder = new BCryptPasswordEncoder();
         this.authenticaor = new GoogleAuthenticator();
     }
 
+    @Override
+    public void setup() {
+        // Services are set up while the handlers initialize, before GameInitializer has published the config
+        Optional<Config> config = GameInitializer.handler(ConfigHandler.class).map(ConfigHandler::config);
+
+        authenticate = config.filter(c -> c.hasPath("account.authenticate")).map(c -> c.getBoolean("account.authenticate")).orElse(false);
+        int threads = config.filter(c -> c.hasPath("account.hash-threads")).map(c -> c.getInt("account.hash-threads"))
+                .orElse(Runtime.getRuntime().availableProcessors());
+        long reconnectWindow = config.filter(c -> c.hasPath("account.reconnect-window")).map(c -> c.getLong("account.reconnect-window"))
+                .orElse(DEFAULT_RECONNECT_WINDOW);
+
+        if (authenticate) {
+            credentials = new CredentialVerifier(passwordEncoder, threads, TimeUnit.MINUTES.toMillis(reconnectWindow));
+            logger.info("Authenticating logins with {} hashing threads, reconnects within {} minutes skip hashing.", threads, reconnectWindow);
+        }
+    }
+
     @Override
     public boolean loadPlayer(Player player, Object uid, String password, Consumer<PlayerLoadResult> fn, LoginRequestMessage loginRequestMessage) {
-        /*Optional<User> oUser = usersRepository.findFirstByUsername(loginRequestMessage.username());
+        if (!authenticate) {
+            loadCharacter(player, charactersRepository.findFirstByUsername(player.username()));
+            fn.accept(PlayerLoadResult.OK);
+            return true;
+        }
+
+        Optional<User> oUser = usersRepository.findFirstByUsername(loginRequestMessage.username());
         if(oUser.isEmpty()) {
             oUser = usersRepository.findFirstByEmail(loginRequestMessage.username());
         }
 
         if(oUser.isEmpty()) {
             fn.accept(PlayerLoadResult.UNREGISTERED_ACCOUNT);
-            return false;
+            return true;
         }
 
         User user = oUser.get();
+        // Looked up here rather than after hashing, so the hashing threads never wait on the database
+        Optional<Character> character = charactersRepository.findFirstByUsername(player.username());
 
         // Make sure that we can never allow players to login without password unless server is in development mode!
         if(!GameInitializer.isDevServer()
         || !GameInitializer.config().hasPath("account.check-password")
         || GameInitializer.config().getBoolean("account.check-password")) {
-            if(!passwordEncoder.matches(loginRequestMessage.password(), user.getPassword())) {
-                fn.accept(PlayerLoadResult.INVALID_DETAILS);
-                return false;
+            CompletableFuture<Boolean> verified;
+            try {
+                verified = credentials.verify(loginRequestMessage.username(), loginRequestMessage.password(), user.getPassword(),
+                        loginRequestMessage.uuid(), loginRequestMessage.reconnect());
+            } catch (RejectedExecutionException e) {
+                // The verifier was shut down, the server is going offline
+                fn.accept(PlayerLoadResult.UPDATING);
+                return true;
             }
+
+            verified.whenComplete((matches, error) -> {
+                if (error != null) {
+                    logger.error("Failed to verify the password of {}.", loginRequestMessage.username(), error);
+                    fn.accept(PlayerLoadResult.ERROR_LOADING);
+                } else if (!matches) {
+                    fn.accept(PlayerLoadResult.INVALID_DETAILS);
+                } else {
+                    completeLogin(player, user, character, fn, loginRequestMessage);
+                }
+            });
+            return true;
         }
 
+        completeLogin(player, user, character, fn, loginRequestMessage);
+        return true;
+    }
+
+    private void completeLogin(Player player, User user, Optional<Character> character, Consumer<PlayerLoadResult> fn, LoginRequestMessage loginRequestMessage) {
         boolean check2fa = true;
         if(GameInitializer.config().hasPath("account.check-2fa")) {
             check2fa = GameInitializer.config().getBoolean("account.check-2fa");
@@ -71,12 +140,15 @@ public class SpringSerializer extends PlayerSerializer {
             player.mfaEnabled(true);
             if(!authenticaor.authorize(user.getTwoFactorSecret(), loginRequestMessage.authPin())) {
                 fn.accept(loginRequestMessage.authPin() == -1 ? PlayerLoadResult.ENTER_AUTH : PlayerLoadResult.AUTH_MISMATCH);
-                logger.info("Player 2FA Secret: " + user.getTwoFactorSecret());
-                return true;
+                return;
             }
-        } */
+        }
 
-        Optional<Character> optionalCharacter = charactersRepository.findFirstByUsername(player.username());
+        loadCharacter(player, character);
+        fn.accept(PlayerLoadResult.OK);
+    }
+
+    private void loadCharacter(Player player, Optional<Character> optionalCharacter) {
         if(optionalCharacter.isPresent()) {
             optionalCharacter.get().getPlayer(player);
             logger.info("Loading existing character.");
@@ -86,13 +158,36 @@ public class SpringSerializer extends PlayerSerializer {
             logger.info("Creating new character.");
             savePlayer(player, false);
         }
+    }
 
-        fn.accept(PlayerLoadResult.OK);
-        return true;
+    /**
+     * @return the credential counters, formatted for logging, or null if logins are not authenticated.
+     */
+    public String credentialSummary() {
+        return credentials == null ? null : credentials.summary();
     }
 
     @Override
-    public void savePlayer(Player player, boolean removeOnline) {
-        this.charactersRepository.save(new Character(player));
+    public boolean stop() {
+        if (credentials != null)
+            credentials.shutdown();
+        return super.stop();
+    }
+
+    /**
+     * Saves the batch in one transaction, letting Hibernate send it as JDBC batches. Snapshots are matched to the row
+     * loading reads for the same username, so existing characters are updated rather than inserted again.
+     */
+    @Override
+    protected void write(List<Character> characters) {
+        transactions.executeWithoutResult(status -> {
+            Map<String, Integer> ids = new HashMap<>();
+            for (Character existing : charactersRepository.findAllByUsernameInOrderByIdAsc(characters.stream().map(Character::getUsername).collect(Collectors.toList()))) {
+                ids.putIfAbsent(existing.getUsername(), existing.getId());
+            }
+
+            characters.forEach(character -> character.setId(ids.getOrDefault(character.getUsername(), 0)));
+            charactersRepository.saveAll(characters);
+        });
     }
 }
@@ -0,0 +1,33 @@
+package io.nozemi.runescape.task;
+
+import io.nozemi.runescape.model.World;
+
+import java.util.Collection;
+
+/**
+ * Sends the object and ground item changes made during the cycle, batched per chunk. Runs first in the sync phase,
+ * after movement but before the map packets, so every change is sent against the active map it happened in.
+ */
+public class ChunkUpdateTask implements Task {
+
+	@Override
+	public void execute(World world) {
+		world.flushChunkUpdates();
+	}
+
+	@Override
+	public Collection<SubTask> createJobs(World world) {
+		return null;
+	}
+
+	@Override
+	public TickPhase phase() {
+		return TickPhase.SYNC;
+	}
+
+	@Override
+	public boolean isAsyncSafe() {
+		return false;
+	}
+
+}
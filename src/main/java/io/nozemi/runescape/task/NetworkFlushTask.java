@@ -1,8 +1,8 @@
 package io.nozemi.runescape.task;
 
+import io.nozemi.runescape.model.EntityList;
 import io.nozemi.runescape.model.World;
-
-import java.util.Collection;
+import io.nozemi.runescape.model.entity.Player;
 
 /**
  * Created by Bart on 5-3-2015.
@@ -10,25 +10,23 @@ import java.util.Collection;
  * A simple task ran at the end of every cycle that flushes the Netty channels. This is instead of
  * the write-and-flush alternative because it's more efficient (imagine a flush() call after every single message...)
  */
-public class NetworkFlushTask implements Task {
+public class NetworkFlushTask extends ShardedTask<Player> {
 	
 	@Override
-	public void execute(World world) {
-		world.players().forEach(p -> {
-			if (!p.bot()) {
-				p.channel().flush();
-			}
-		});
+	protected EntityList<Player> entities(World world) {
+		return world.players();
 	}
 	
 	@Override
-	public Collection<SubTask> createJobs(World world) {
-		return null;
+	protected void process(Player p) {
+		if (!p.bot()) {
+			p.channel().flush();
+		}
 	}
 	
 	@Override
-	public boolean isAsyncSafe() {
-		return false;
+	public TickPhase phase() {
+		return TickPhase.FLUSH;
 	}
 	
 }
@@ -1,32 +1,27 @@
 package io.nozemi.runescape.task;
 
+import io.nozemi.runescape.model.EntityList;
 import io.nozemi.runescape.model.World;
 import io.nozemi.runescape.model.entity.Npc;
 
-import java.util.Collection;
-
 /**
  * Created by Bart Pelle on 8/10/2015.
  */
-public class NpcPostSyncTask implements Task {
+public class NpcPostSyncTask extends ShardedTask<Npc> {
 	
 	@Override
-	public void execute(World world) {
-		world.npcs().forEach(this::postUpdate);
-	}
-	
-	private void postUpdate(Npc npc) {
-		npc.sync().clear();
+	protected EntityList<Npc> entities(World world) {
+		return world.npcs();
 	}
 	
 	@Override
-	public Collection<SubTask> createJobs(World world) {
-		return null;
+	protected void process(Npc npc) {
+		npc.sync().clear();
 	}
 	
 	@Override
-	public boolean isAsyncSafe() {
-		return false;
+	public TickPhase phase() {
+		return TickPhase.FLUSH;
 	}
 	
 }
@@ -24,6 +24,11 @@ public class NpcPreSyncTask implements Task {
 		return null;
 	}
 	
+	@Override
+	public TickPhase phase() {
+		return TickPhase.MOVEMENT;
+	}
+	
 	@Override
 	public boolean isAsyncSafe() {
 		return false;
@@ -23,6 +23,11 @@ public class NpcProcessingTask implements Task {
 		}
 	}
 	
+	@Override
+	public TickPhase phase() {
+		return TickPhase.LOGIC;
+	}
+	
 	@Override
 	public boolean isAsyncSafe() {
 		return false;
@@ -1,7 +1,6 @@
 package io.nozemi.runescape.task;
 
 import io.nozemi.runescape.io.RSBuffer;
-import io.nozemi.runescape.model.EntityList;
 import io.nozemi.runescape.model.Tile;
 import io.nozemi.runescape.model.World;
 import io.nozemi.runescape.model.entity.Npc;
@@ -21,12 +20,14 @@ public class NpcSyncTask implements Task {
 	
 	private static final Logger logger = LogManager.getLogger(NpcSyncTask.class);
 	
+	private static final Comparator<Npc> BY_INDEX = Comparator.comparingInt(Npc::index);
+	
 	static class Job extends SubTask {
 		
 		/**
-		 * Preallocated integer array to avoid continuous reallocation.
+		 * Preallocated per worker state to avoid continuous reallocation, see {@link SyncScratch}.
 		 */
-		private int[] rebuilt = new int[2048];
+		private SyncScratch scratch;
 		private Player[] players;
 		private Set<Integer> transmogged = new HashSet<>(32);
 		private Set<Integer> withCustomCombatLevel = new HashSet<>(32);
@@ -38,6 +39,8 @@ public class NpcSyncTask implements Task {
 		
 		@Override
 		public void execute() {
+			scratch = SyncScratch.get();
+			
 			for (Player player : players) {
 				try {
 					if (!player.bot())
@@ -54,7 +57,7 @@ public class NpcSyncTask implements Task {
 
 			boolean largeViewport = player.world().allocator().active(player.tile()).isPresent() && player.world().allocator().active(player.tile()).get().largeViewPort();
 			
-			RSBuffer buffer = new RSBuffer(player.channel().alloc().buffer(512));
+			RSBuffer buffer = scratch.begin();
 			buffer.packet(largeViewport ? 8 : 33).writeSize(RSBuffer.SizeType.SHORT);
 			
 			buffer.startBitMode();
@@ -113,39 +116,14 @@ public class NpcSyncTask implements Task {
 					}
 				}
 				
-				buffer.writeByte(mask);
-
-				if (npcSync.hasFlag(NpcSyncInfo.Flag.GRAPHIC.value))
-					buffer.writeBytes(npcSync.graphicSet());
-
-				if (forceTile != null) {
-					buffer.writeShort(forceTile.x);
-					buffer.writeShortA(forceTile.z);
-				} else if (npcSync.hasFlag(NpcSyncInfo.Flag.FACE_TILE.value))
-					buffer.writeBytes(npcSync.faceTileSet());
-
-				if (npcSync.hasFlag(NpcSyncInfo.Flag.HIT.value))
-					buffer.writeBytes(npcSync.hitSet());
-
-				if (npcSync.hasFlag(NpcSyncInfo.Flag.TRANSMOG.value) || transmogged.contains(npc.index()))
-					buffer.writeShortA(npcSync.transmog() <= 0 ? npc.id() : npcSync.transmog());
-				
-				if (forceEntity != -1)
-					buffer.writeLEShort(forceEntity);
-				else if (npcSync.hasFlag(NpcSyncInfo.Flag.FACE_ENTITY.value))
-					buffer.writeBytes(npcSync.faceEntitySet());
-				
-				if (npcSync.hasFlag(NpcSyncInfo.Flag.ANIMATION.value))
-					buffer.writeBytes(npcSync.animationSet());
-
-				if (npcSync.hasFlag(NpcSyncInfo.Flag.SHOUT.value))
-					buffer.writeBytes(npcSync.shout());
-
-				if (npcSync.hasFlag(NpcSyncInfo.Flag.COMBAT_LEVEL.value) || withCustomCombatLevel.contains(npc.index()))
-					buffer.writeShort(npcSync.combatLevel());
+				// Unless we have forced values, every viewer gets the same block which the npc encodes once this cycle.
+				if (mask == npcSync.calculatedFlag() && forceEntity == -1 && forceTile == null)
+					buffer.writeBytes(npcSync.maskBlock());
+				else
+					npcSync.encodeMaskBlock(buffer, mask, forceEntity, forceTile);
 			}
 
-			player.write(new UpdatePlayers(buffer));
+			player.write(new UpdatePlayers(scratch.copyOut(player.channel().alloc())));
 		}
 		
 		private void encodeSurroundings(Player player, RSBuffer buffer, boolean largeViewport) {
@@ -153,7 +131,7 @@ public class NpcSyncTask implements Task {
 			int[] npcUpdateRequests = playerSyncInfo.npcUpdateRequests();
 			int[] localNpcIndices = playerSyncInfo.localNpcIndices();
 			buffer.writeBits(8, playerSyncInfo.localNpcPtr()); // Local npc count
-			int[] rebuilt = this.rebuilt;
+			int[] rebuilt = scratch.rebuilt;
 			int npcPointer = playerSyncInfo.npcUpdateReqPtr();
 			
 			int rebuiltptr = 0;
@@ -225,18 +203,20 @@ public class NpcSyncTask implements Task {
 			int[] ln = playerSync.localNpcIndices();
 			int lnp = playerSync.localNpcPtr();
 			
-			EntityList<Npc> npcs = player.world().npcs();
-			List<Npc> entriesList = npcs.getEntriesList();
-			int listSize = entriesList.size();
 			boolean hideAllNpcs = player.sync().HIDE_ALL_NPCS;
+			int viewDistance = largeViewport ? 30 : 14; //I'm guessing its 30???
 			
-			for (int idx = 0; idx < listSize; idx++) {
-				Npc npc = entriesList.get(idx);
+			// Only the npcs in the chunks around us can possibly enter the viewport. Sorted by index so the
+			// 25 per cycle limit below picks the same npcs the full list scan used to.
+			List<Npc> candidates = hideAllNpcs ? Collections.emptyList() : player.world().npcs().inArea(player.tile().area(viewDistance));
+			candidates.sort(BY_INDEX);
+			
+			for (int idx = 0; idx < candidates.size(); idx++) {
+				Npc npc = candidates.get(idx);
 				
-				boolean visible = npc != null && player.tile().distance(npc.tile()) > (largeViewport ? 30 : 14); //I'm guessing its 30???
+				boolean visible = player.tile().distance(npc.tile()) > viewDistance;
 				
-				if (npc == null || npc.hidden() || playerSync.hasNpcInView(npc.index()) || visible || player.tile().level != npc.tile().level
-						|| hideAllNpcs)
+				if (npc.hidden() || playerSync.hasNpcInView(npc.index()) || visible || player.tile().level != npc.tile().level)
 					continue;
 				
 				// Limit addition to 25 per cycle, and 255 local.
@@ -324,6 +304,11 @@ public class NpcSyncTask implements Task {
 		return tasks;
 	}
 	
+	@Override
+	public TickPhase phase() {
+		return TickPhase.SYNC;
+	}
+	
 	@Override
 	public boolean isAsyncSafe() {
 		return true;
@@ -1,28 +1,28 @@
 package io.nozemi.runescape.task;
 
+import io.nozemi.runescape.model.EntityList;
 import io.nozemi.runescape.model.World;
-
-import java.util.Collection;
+import io.nozemi.runescape.model.entity.Npc;
 
 /**
  * Created by Bart on 8/26/2015.
  */
-public class NpcViewportTask implements Task {
+public class NpcViewportTask extends ShardedTask<Npc> {
 	
 	@Override
-	public void execute(World world) {
-		// Reset viewport states for npcs
-		world.npcs().forEach(n -> n.inViewport(false));
+	protected EntityList<Npc> entities(World world) {
+		return world.npcs();
 	}
 	
 	@Override
-	public boolean isAsyncSafe() {
-		return false;
+	protected void process(Npc n) {
+		// Reset viewport states for npcs
+		n.inViewport(false);
 	}
 	
 	@Override
-	public Collection<SubTask> createJobs(World world) {
-		return null;
+	public TickPhase phase() {
+		return TickPhase.SYNC;
 	}
 	
 }
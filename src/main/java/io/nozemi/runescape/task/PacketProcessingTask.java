@@ -3,7 +3,6 @@ package io.nozemi.runescape.task;
 import io.nozemi.runescape.model.EntityList;
 import io.nozemi.runescape.net.packets.PacketProvider;
 import kotlin.ranges.IntRange;
-import io.nozemi.runescape.ServerProcessor;
 import io.nozemi.runescape.model.Entity;
 import io.nozemi.runescape.model.World;
 import io.nozemi.runescape.model.entity.Player;
@@ -52,12 +51,7 @@ public class PacketProcessingTask implements Task {
 				player.pendingPackets().clear(); // FUck you cya
 			}
 
-			player.pendingPackets().forEach(packet -> {
-				long start = System.currentTimeMillis();
-				packetProvider.handlePacket(packet);
-				long taken = System.currentTimeMillis() - start;
-				ServerProcessor.computeTimes.compute(player.username(), (s, integer) -> integer == null ? taken : (taken + integer));
-			});
+			player.pendingPackets().forEach(packetProvider::handlePacket);
 
 			if (player.pendingActions().size() > 20) {
 				logger.warn("Flooding? Size {} queue from {} at ip {}.", player.pendingActions().size(), player.username(), player.ip());
@@ -66,10 +60,7 @@ public class PacketProcessingTask implements Task {
 
 			player.pendingActions().forEach(packet -> {
 				try {
-					long start = System.currentTimeMillis();
 					packet.process(player);
-					long taken = System.currentTimeMillis() - start;
-					ServerProcessor.computeTimes.compute(player.username(), (s, integer) -> integer == null ? taken : (taken + integer));
 				} catch (Exception e) {
 					logger.error("Error processing message {} for player {} at {}.", packet.getClass().getSimpleName(), player.username(), player.tile().toStringSimple());
 					logger.error("Caused by: ", e);
@@ -116,6 +107,11 @@ public class PacketProcessingTask implements Task {
 		return null;
 	}
 	
+	@Override
+	public TickPhase phase() {
+		return TickPhase.INPUT;
+	}
+	
 	@Override
 	public boolean isAsyncSafe() {
 		return false;
@@ -0,0 +1,92 @@
+package io.nozemi.runescape.task;
+
+import io.nozemi.runescape.model.World;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the registered {@link Task}s phase by phase. Within a phase the tasks run in registration order; tasks that
+ * are {@link Task#isAsyncSafe() async safe} have their jobs spread over a work-stealing pool, and every task (and
+ * thus every phase) finishes before the next one starts.
+ */
+public class PhaseScheduler {
+	
+	private static final Logger logger = LogManager.getLogger(PhaseScheduler.class);
+	
+	private static final TickPhase[] PHASES = TickPhase.values();
+	
+	private final EnumMap<TickPhase, List<Task>> tasks = new EnumMap<>(TickPhase.class);
+	private final ExecutorService executor = Executors.newWorkStealingPool();
+	private final long[] phaseNanos = new long[PHASES.length];
+	
+	public PhaseScheduler() {
+		for (TickPhase phase : PHASES)
+			tasks.put(phase, new ArrayList<>());
+	}
+	
+	public void register(Task task) {
+		tasks.get(task.phase()).add(task);
+	}
+	
+	/**
+	 * Executes one full cycle of all phases.
+	 */
+	public void run(World world) {
+		for (TickPhase phase : PHASES) {
+			long start = System.nanoTime();
+			
+			for (Task t : tasks.get(phase)) {
+				try {
+					if (t.isAsyncSafe()) { // Is this job distributable across multiple workers?
+						awaitAll(t, executor.invokeAll(t.createJobs(world)));
+					} else { // Simple non-thread safe job that must execute all by itself.
+						t.execute(world);
+					}
+				} catch (Throwable throwable) {
+					logger.error("An exception occurred when executing " + t.getClass().getSimpleName() + ".", throwable);
+				}
+			}
+			
+			phaseNanos[phase.ordinal()] = System.nanoTime() - start;
+		}
+	}
+	
+	private static void awaitAll(Task task, List<Future<Object>> futures) throws InterruptedException {
+		for (Future<Object> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				logger.error("A job of " + task.getClass().getSimpleName() + " failed.", e.getCause());
+			}
+		}
+	}
+	
+	/**
+	 * @return how long the phase took during the last cycle, in milliseconds.
+	 */
+	public long phaseTime(TickPhase phase) {
+		return TimeUnit.NANOSECONDS.toMillis(phaseNanos[phase.ordinal()]);
+	}
+	
+	/**
+	 * @return the phase times of the last cycle, formatted for logging.
+	 */
+	public String timings() {
+		StringJoiner joiner = new StringJoiner(", ", "{", "}");
+		for (TickPhase phase : PHASES)
+			joiner.add(phase + "=" + phaseTime(phase) + "ms");
+		return joiner.toString();
+	}
+	
+	public void shutdown() {
+		executor.shutdown();
+	}
+	
+}
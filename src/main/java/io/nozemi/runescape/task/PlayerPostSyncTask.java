@@ -2,27 +2,27 @@ package io.nozemi.runescape.task;
 
 import io.nozemi.runescape.model.Area;
 import io.nozemi.runescape.model.AttributeKey;
+import io.nozemi.runescape.model.EntityList;
 import io.nozemi.runescape.model.Tile;
 import io.nozemi.runescape.model.World;
 import io.nozemi.runescape.model.entity.Player;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.Collection;
-
 /**
  * Created by Bart Pelle on 8/23/2014.
  */
-public class PlayerPostSyncTask implements Task {
+public class PlayerPostSyncTask extends ShardedTask<Player> {
 	
 	private static final Logger logger = LogManager.getLogger(PlayerPostSyncTask.class);
 	
 	@Override
-	public void execute(World world) {
-		world.players().forEach(this::postUpdate);
+	protected EntityList<Player> entities(World world) {
+		return world.players();
 	}
 	
-	private void postUpdate(Player player) {
+	@Override
+	protected void process(Player player) {
 		player.sync().clear();
 		
 		boolean regionChanged = player.attribOr(AttributeKey.REGION_CHANGING, false);
@@ -39,13 +39,8 @@ public class PlayerPostSyncTask implements Task {
 	}
 	
 	@Override
-	public Collection<SubTask> createJobs(World world) {
-		return null;
-	}
-	
-	@Override
-	public boolean isAsyncSafe() {
-		return false;
+	public TickPhase phase() {
+		return TickPhase.FLUSH;
 	}
 	
 }
@@ -34,6 +34,11 @@ public class PlayerPreSyncTask implements Task {
 		return null;
 	}
 	
+	@Override
+	public TickPhase phase() {
+		return TickPhase.MOVEMENT;
+	}
+	
 	@Override
 	public boolean isAsyncSafe() {
 		return false;
@@ -1,6 +1,5 @@
 package io.nozemi.runescape.task;
 
-import io.nozemi.runescape.ServerProcessor;
 import io.nozemi.runescape.model.World;
 import io.nozemi.runescape.model.entity.Player;
 import io.nozemi.runescape.net.message.game.command.SystemUpdateTimer;
@@ -26,7 +25,6 @@ public class PlayerProcessingTask implements Task {
 		
 		world.getPvpShuffablePid().forEach((Player player) -> {
 			try {
-				long start = System.currentTimeMillis();
 				player.cycle();
 				// After scripts/packets, but before movement.
 				
@@ -41,10 +39,6 @@ public class PlayerProcessingTask implements Task {
 				if (!player.bot()) {
 					player.channel().flush();
 				}
-				
-				long taken = System.currentTimeMillis() - start;
-				ServerProcessor.computeTimes.compute(player.username(), (String s, Long integer)
-						-> integer == null ? taken : (taken + integer));
 			} catch (Exception e) {
 				logger.error("Error processing logic for {}.", player, e);
 			}
@@ -56,6 +50,11 @@ public class PlayerProcessingTask implements Task {
 		return null;
 	}
 	
+	@Override
+	public TickPhase phase() {
+		return TickPhase.LOGIC;
+	}
+	
 	@Override
 	public boolean isAsyncSafe() {
 		return false;
@@ -12,7 +12,6 @@ import io.nozemi.runescape.net.message.game.Command;
 import io.nozemi.runescape.net.message.game.command.DisplayInstancedMap;
 import io.nozemi.runescape.net.message.game.command.DisplayMap;
 import io.nozemi.runescape.net.message.game.command.UpdatePlayers;
-import io.nozemi.runescape.util.Varp;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -28,12 +27,13 @@ public class PlayerSyncTask implements Task {
 	static class Job extends SubTask {
 		
 		/**
-		 * Preallocated integer array to avoid continuous reallocation.
+		 * Preallocated per worker state to avoid continuous reallocation, see {@link SyncScratch}.
 		 */
-		private int[] playerIndicesNeedingMaskUpdate = new int[2048];
+		private SyncScratch scratch;
+		private int[] playerIndicesNeedingMaskUpdate;
 		private int maskRequestCount = 0;
 		private Player[] players;
-		private Set<Integer> newlyAdded = new HashSet<>();
+		private BitSet newlyAdded;
 		
 		public Job(World world, Player... players) {
 			super(world);
@@ -42,6 +42,10 @@ public class PlayerSyncTask implements Task {
 		
 		@Override
 		public void execute() {
+			scratch = SyncScratch.get();
+			playerIndicesNeedingMaskUpdate = scratch.maskRequests;
+			newlyAdded = scratch.newlyAdded;
+			
 			for (Player player : players)
 				sync(player);
 		}
@@ -49,7 +53,11 @@ public class PlayerSyncTask implements Task {
 		private void sync(Player player) {
 			player.sync().init();
 			
-			RSBuffer buffer = new RSBuffer(player.channel().alloc().buffer(513));
+			// Reset the worker state up front, a previous sync on this worker may have bailed out halfway
+			maskRequestCount = 0;
+			newlyAdded.clear();
+			
+			RSBuffer buffer = scratch.begin();
 			buffer.packet(56).writeSize(RSBuffer.SizeType.SHORT);
 			
 			processLocal(buffer, player, false);
@@ -81,74 +89,16 @@ public class PlayerSyncTask implements Task {
 			for (int masky = 0; masky < maskRequestCount; masky++) {
 				int index = playerIndicesNeedingMaskUpdate[masky];
 				Player p = player.world().players().get(index);
-				int mask = p.sync().calculatedFlag();
-				
-				if (newlyAdded.contains(p.index()))
-					mask |= PlayerSyncInfo.Flag.LOOKS.value;
-
-				// Surpress their message, if its not us.
-				if (p.sync().hasFlag(PlayerSyncInfo.Flag.CHAT.value) && p.sync().publicChatDampered && p != player) {
-					mask &= ~PlayerSyncInfo.Flag.CHAT.value;
-					//System.out.println(String.format("%s not rendering msg of %s as dampered", player.name(), p.name()));
-				}
-				
-				if (mask >> 8 != 0) {
-					mask |= 0x80;
-				}
-				
-				buffer.writeByte(mask);
 				
-				if (mask >> 8 != 0) {
-					buffer.writeByte(mask >> 8);
-				}
-
-				if (p.sync().hasFlag(PlayerSyncInfo.Flag.TELEPORT_MODE.value))
-					buffer.writeByteS(p.sync().teleportMode());
-
-				if (p.sync().hasFlag(PlayerSyncInfo.Flag.SHOUT.value))
-					buffer.get().writeBytes(p.sync().shout());
-
-				if (p.sync().hasFlag(PlayerSyncInfo.Flag.GRAPHIC.value))
-					buffer.get().writeBytes(p.sync().graphicSet());
-
-				if (p.sync().hasFlag(PlayerSyncInfo.Flag.PREFIX_NAME_SUFFIX.value))
-					buffer.get().writeBytes(p.sync().tripleStrings());
-
-				if (p.sync().hasFlag(PlayerSyncInfo.Flag.ANIMATION.value))
-					buffer.get().writeBytes(p.sync().animationSet());
-
-				if ((mask & PlayerSyncInfo.Flag.CHAT.value) != 0) {
-					boolean hasCensoredBlock = player.varps().varp(Varp.PROFANITY) == 0 && p.sync().censoredPubChatMessageBlock() != null;
-					buffer.get().writeBytes(hasCensoredBlock ? p.sync().censoredPubChatMessageBlock() : p.sync().chatMessageBlock());
-				}
-
-				if (p.sync().hasFlag(PlayerSyncInfo.Flag.MOVEMENT_MODE.value))
-					buffer.writeByteS(p.sync().movementMode());
-
-				if (p.sync().hasFlag(PlayerSyncInfo.Flag.HIT.value))
-					buffer.get().writeBytes(p.sync().hitSet());
-
-				if (p.sync().hasFlag(PlayerSyncInfo.Flag.FORCE_MOVE.value))
-					p.sync().forceMove(player, buffer);
-
-				if (p.sync().hasFlag(PlayerSyncInfo.Flag.FACE_ENTITY.value))
-					buffer.get().writeBytes(p.sync().faceEntitySet());
-
-				if (p.sync().hasFlag(PlayerSyncInfo.Flag.LOOKS.value) || newlyAdded.contains(p.index())) {
-					buffer.get().writeBytes(p.sync().looksBlock());
-				}
-				
-				if (p.sync().hasFlag(PlayerSyncInfo.Flag.FACE_TILE.value))
-					buffer.get().writeShort(p.remoteLocation().angleTo(p.sync().facedTile()));
+				// The block only differs per viewer by the looks of new additions and the chat version they get to
+				// see, so all viewers share the few variants the player encodes once this cycle.
+				PlayerSyncInfo.ChatVariant chat = p.sync().chatVariantFor(player);
+				buffer.writeBytes(p.sync().maskBlock(newlyAdded.get(p.index()), chat));
 			}
 			
 			player.sync().visiblePlayerCount(visiblePlayerCount);
 			player.sync().invisiblePlayerCount(invisiblePlayerCount);
 			
-			// Change mask request amount back to zero
-			maskRequestCount = 0;
-			newlyAdded.clear();
-			
 			Command mapPacket = null;
 			if (player.activeMap() == null) {
 				player.putattrib(AttributeKey.PREVIOUS_MAP, null);
@@ -177,6 +127,7 @@ public class PlayerSyncTask implements Task {
 			}
 			
 			// And finally, write the packet
+			buffer = scratch.copyOut(player.channel().alloc());
 			if (mapPacket == null) {
 				player.write(new UpdatePlayers(buffer));
 			} else {
@@ -206,7 +157,7 @@ public class PlayerSyncTask implements Task {
 						skips--;
 						playerFlags[playerIndex] |= 0x2;
 					} else {
-						boolean needsUpdate = p == null || !canView(player, p) || (p.sync().dirty() || newlyAdded.contains(playerIndex));
+						boolean needsUpdate = p == null || !canView(player, p) || (p.sync().dirty() || newlyAdded.get(playerIndex));
 						
 						if (!needsUpdate) {
 							buffer.writeBits(1, 0);
@@ -375,7 +326,7 @@ public class PlayerSyncTask implements Task {
 					packet.writeBits(1, 1); /* Signal for mask updating */
 					
 					playerIndicesNeedingMaskUpdate[maskRequestCount++] = p.index();
-					newlyAdded.add(p.index());
+					newlyAdded.set(p.index());
 					player.sync().lastRegionHashes()[p.index()] = p.tile().hash18();
 					return true;
 				} else {
@@ -488,6 +439,11 @@ public class PlayerSyncTask implements Task {
 		return tasks;
 	}
 	
+	@Override
+	public TickPhase phase() {
+		return TickPhase.SYNC;
+	}
+	
 	@Override
 	public boolean isAsyncSafe() {
 		return true;
@@ -32,6 +32,11 @@ public class ScriptProcessingTask implements Task {
 		return null;
 	}
 	
+	@Override
+	public TickPhase phase() {
+		return TickPhase.LOGIC;
+	}
+	
 	@Override
 	public boolean isAsyncSafe() {
 		return false;
@@ -0,0 +1,82 @@
+package io.nozemi.runescape.task;
+
+import io.nozemi.runescape.model.Entity;
+import io.nozemi.runescape.model.EntityList;
+import io.nozemi.runescape.model.World;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A task that does independent work per entity, which can therefore be split over contiguous slot ranges of the
+ * entity list and run across all cores.
+ */
+public abstract class ShardedTask<T extends Entity> implements Task {
+	
+	private static final Logger logger = LogManager.getLogger(ShardedTask.class);
+	
+	private static final int SHARDS = Runtime.getRuntime().availableProcessors();
+	
+	protected abstract EntityList<T> entities(World world);
+	
+	protected abstract void process(T entity);
+	
+	@Override
+	public void execute(World world) {
+		entities(world).forEach(this::safeProcess);
+	}
+	
+	@Override
+	public Collection<SubTask> createJobs(World world) {
+		EntityList<T> list = entities(world);
+		int capacity = list.raw().length;
+		int span = (capacity + SHARDS - 1) / SHARDS;
+		
+		List<SubTask> jobs = new ArrayList<>(SHARDS);
+		for (int from = 0; from < capacity; from += span) {
+			jobs.add(new Shard(world, list, from, Math.min(capacity, from + span)));
+		}
+		return jobs;
+	}
+	
+	@Override
+	public boolean isAsyncSafe() {
+		return true;
+	}
+	
+	private void safeProcess(T entity) {
+		try {
+			process(entity);
+		} catch (Exception e) {
+			logger.error("Error in {} for {}.", getClass().getSimpleName(), entity, e);
+		}
+	}
+	
+	private class Shard extends SubTask {
+		
+		private final EntityList<T> list;
+		private final int from;
+		private final int to;
+		
+		private Shard(World world, EntityList<T> list, int from, int to) {
+			super(world);
+			this.list = list;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		public void execute() {
+			for (int i = from; i < to; i++) {
+				T entity = list.fastget(i);
+				if (entity != null)
+					safeProcess(entity);
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,61 @@
+package io.nozemi.runescape.task;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.nozemi.runescape.io.RSBuffer;
+
+import java.util.BitSet;
+
+/**
+ * Per worker scratch space for the player and npc sync jobs. Update packets are built in a buffer that is reused
+ * for every player the worker syncs, and only copied out into an exactly sized channel buffer once complete. This
+ * keeps the per-packet cost at a single allocation instead of a buffer that is regrown (and copied) as it fills up.
+ */
+final class SyncScratch {
+	
+	private static final ThreadLocal<SyncScratch> LOCAL = ThreadLocal.withInitial(SyncScratch::new);
+	
+	private static final int INITIAL_CAPACITY = 16 * 1024;
+	
+	/**
+	 * Indices of the players needing their mask block written, in the order they were encoded.
+	 */
+	final int[] maskRequests = new int[2048];
+	
+	/**
+	 * Indices of the players added to the local list during the current sync.
+	 */
+	final BitSet newlyAdded = new BitSet(2048);
+	
+	/**
+	 * Rebuilt local npc list for the npc sync.
+	 */
+	final int[] rebuilt = new int[2048];
+	
+	private final RSBuffer packet = new RSBuffer(Unpooled.buffer(INITIAL_CAPACITY));
+	
+	static SyncScratch get() {
+		return LOCAL.get();
+	}
+	
+	/**
+	 * @return the scratch packet buffer, emptied.
+	 */
+	RSBuffer begin() {
+		return packet.reset();
+	}
+	
+	/**
+	 * Completes the scratch packet and copies it into a buffer from the given allocator.
+	 */
+	RSBuffer copyOut(ByteBufAllocator alloc) {
+		packet.finish();
+		
+		ByteBuf scratch = packet.get();
+		ByteBuf out = alloc.buffer(scratch.readableBytes());
+		out.writeBytes(scratch, scratch.readerIndex(), scratch.readableBytes());
+		return new RSBuffer(out).packet(packet.packet());
+	}
+	
+}
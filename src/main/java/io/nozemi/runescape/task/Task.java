@@ -11,6 +11,11 @@ public interface Task {
 	
 	void execute(World world);
 	
+	/**
+	 * @return the phase of the cycle this task runs in.
+	 */
+	TickPhase phase();
+	
 	boolean isAsyncSafe();
 	
 	Collection<SubTask> createJobs(World world);
@@ -0,0 +1,157 @@
+package io.nozemi.runescape.task;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed-rate clock for the game cycle. Ticks are scheduled against absolute {@link System#nanoTime()} deadlines on a
+ * fixed grid, so sleep overshoot and cycle jitter do not accumulate into drift. What happens once a cycle runs past
+ * the next deadline is decided by the {@link OverrunPolicy}.
+ * <p>
+ * The lateness of every tick (actual start minus its deadline) is kept for the last {@link #SAMPLES} ticks to report
+ * percentiles from.
+ */
+public class TickClock {
+
+	/**
+	 * How to get back on the grid after a cycle overran its period.
+	 */
+	public enum OverrunPolicy {
+
+		/**
+		 * Start the late tick right away, but drop every other deadline that already passed.
+		 */
+		SKIP,
+
+		/**
+		 * Run the missed ticks at half the period until back on the grid.
+		 */
+		COMPRESS,
+
+		/**
+		 * Run the missed ticks back-to-back until back on the grid.
+		 */
+		CATCH_UP
+
+	}
+
+	/**
+	 * Number of ticks the lateness percentiles are computed over.
+	 */
+	public static final int SAMPLES = 100;
+
+	/**
+	 * Most ticks we will try to make up for. Anything beyond this is skipped, so one long stall cannot turn into a
+	 * burst of dozens of ticks.
+	 */
+	private static final int MAX_BACKLOG = 5;
+
+	private final long period;
+	private final OverrunPolicy policy;
+
+	private long deadline; // Deadline of the tick currently running
+	private long started; // When the tick currently running actually started
+
+	private final long[] lateness = new long[SAMPLES];
+	private int samples;
+	private int samplePtr;
+
+	private long overruns;
+	private long skipped;
+
+	public TickClock(long period, TimeUnit unit, OverrunPolicy policy) {
+		this.period = unit.toNanos(period);
+		this.policy = policy;
+	}
+
+	/**
+	 * Anchors the grid at the current time, making it the deadline of the first tick.
+	 */
+	public void start() {
+		deadline = started = System.nanoTime();
+	}
+
+	/**
+	 * Blocks until the deadline of the next tick, according to the overrun policy if the current one ran late.
+	 */
+	public void awaitNextTick() {
+		long now = System.nanoTime();
+		long next = deadline + period;
+
+		if (now > next) {
+			overruns++;
+
+			long behind = (now - next) / period; // Deadlines passed besides the next one
+			long skip = policy == OverrunPolicy.SKIP ? behind : Math.max(0, behind - MAX_BACKLOG);
+			next += skip * period;
+			skipped += skip;
+		}
+
+		long target = next;
+		if (policy == OverrunPolicy.COMPRESS)
+			target = Math.max(next, started + period / 2);
+
+		while ((now = System.nanoTime()) < target) {
+			LockSupport.parkNanos(target - now);
+		}
+
+		deadline = next;
+		started = now;
+		record(now - next);
+	}
+
+	private void record(long late) {
+		lateness[samplePtr] = late;
+		samplePtr = (samplePtr + 1) % SAMPLES;
+		samples = Math.min(SAMPLES, samples + 1);
+	}
+
+	/**
+	 * @return how long the current tick has been running, in milliseconds.
+	 */
+	public long elapsed() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+	}
+
+	/**
+	 * @param percentile between 0 and 100.
+	 * @return the tick lateness at the given percentile over the last {@link #SAMPLES} ticks, in milliseconds.
+	 */
+	public double latenessPercentile(double percentile) {
+		if (samples == 0)
+			return 0;
+
+		long[] sorted = Arrays.copyOf(lateness, samples);
+		Arrays.sort(sorted);
+		int idx = (int) Math.ceil(percentile / 100.0 * samples) - 1;
+		return sorted[Math.max(0, Math.min(samples - 1, idx))] / 1_000_000.0;
+	}
+
+	/**
+	 * @return the number of ticks that ran past the next deadline.
+	 */
+	public long overruns() {
+		return overruns;
+	}
+
+	/**
+	 * @return the number of deadlines dropped by the overrun policy.
+	 */
+	public long skipped() {
+		return skipped;
+	}
+
+	public OverrunPolicy policy() {
+		return policy;
+	}
+
+	/**
+	 * @return the lateness percentiles and overrun counters, formatted for logging.
+	 */
+	public String summary() {
+		return String.format("lateness p50=%.1fms p99=%.1fms max=%.1fms, overruns=%d, skipped=%d (%s)",
+				latenessPercentile(50), latenessPercentile(99), latenessPercentile(100), overruns, skipped, policy);
+	}
+
+}
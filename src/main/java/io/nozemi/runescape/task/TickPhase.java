@@ -0,0 +1,34 @@
+package io.nozemi.runescape.task;
+
+/**
+ * The phases a game cycle is made of, in execution order. Every {@link Task} declares the phase it reads and writes;
+ * all tasks of a phase complete before the next phase starts.
+ */
+public enum TickPhase {
+	
+	/**
+	 * Incoming packets and queued player actions.
+	 */
+	INPUT,
+	
+	/**
+	 * World, player and npc logic: timers, scripts, combat.
+	 */
+	LOGIC,
+	
+	/**
+	 * Applying the steps queued up during logic.
+	 */
+	MOVEMENT,
+	
+	/**
+	 * Building the player and npc update packets.
+	 */
+	SYNC,
+	
+	/**
+	 * Resetting per-cycle update state and flushing the network channels.
+	 */
+	FLUSH
+	
+}
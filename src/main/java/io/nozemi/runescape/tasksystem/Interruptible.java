@@ -2,10 +2,6 @@ package io.nozemi.runescape.tasksystem;
 
 import io.nozemi.runescape.model.Entity;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-
 public abstract class Interruptible {
     protected String name;
     protected Entity entity;
@@ -16,6 +12,8 @@ public abstract class Interruptible {
 
     protected boolean cancellableByWalking = true;
 
+    boolean submitted;
+
     protected Interruptible(Entity entity) {
         this.entity = entity;
     }
@@ -44,6 +42,19 @@ public abstract class Interruptible {
     }
 
     public void cancel() {
+        if (completed)
+            return;
+
+        this.completed = true;
+        this.cancelled = true;
+        if (submitted)
+            TaskManager.cancelled(this);
+    }
+
+    /**
+     * Stops it without calling back, see {@link TaskManager#clear}.
+     */
+    void drop() {
         this.completed = true;
         this.cancelled = true;
     }
@@ -59,14 +70,7 @@ public abstract class Interruptible {
 
     abstract void cycle();
 
-    public void submit(Map<Integer, List<Interruptible>> list) {
-        List<Interruptible> chain = new ArrayList<>();
-        if (list.containsKey(entity.index())) {
-            chain = list.get(entity.index());
-        }
-
-        chain.add(this);
-
-        list.put(entity.index(), chain);
+    public void submit() {
+        TaskManager.submit(this);
     }
 }
@@ -5,12 +5,19 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 public class InterruptibleChain extends Interruptible {
     private static final Logger logger = LogManager.getLogger(InterruptibleChain.class);
 
-    private List<ChainableEvent> events = new ArrayList<>();
+    private final List<ChainableEvent> events = new ArrayList<>();
+    private int next;
+    private long base;
+
+    // The tick the next event is due, and whether it waits in the queue for it, see TaskManager
+    long nextStep;
+    boolean queued;
 
     private InterruptibleChain(Entity entity) {
         super(entity);
@@ -70,33 +77,44 @@ public class InterruptibleChain extends Interruptible {
         return this;
     }
 
+    /**
+     * Delays count from the tick the chain is started on; events due on the same tick run in the order they were added.
+     */
+    void start(long tick) {
+        events.sort(Comparator.comparingInt(ChainableEvent::delay));
+        base = tick;
+        next = 0;
+        nextStep = events.isEmpty() ? tick : tick + events.get(0).delay();
+    }
+
     @Override
     public void cycle() {
-        if (cancelled) {
-            this.onCancelled.execute();
-            return;
-        }
+        long tick = TaskManager.tick();
+        while (next < events.size() && base + events.get(next).delay() <= tick) {
+            events.get(next++).execute();
 
-        for (int i = events.size() - 1; i >= 0; i--) {
-            ChainableEvent event = events.get(i);
-            if (event.delay() > 0) {
-                event.delay(event.delay() - 1);
-            } else {
-                events.remove(event);
-                event.execute();
-            }
+            if (cancelled)
+                return;
         }
 
-        if (events.size() <= 0) {
-            this.onCompleted.execute();
+        if (next < events.size()) {
+            nextStep = base + events.get(next).delay();
+        } else {
             this.completed = true;
+            if (this.onCompleted != null)
+                this.onCompleted.execute();
         }
     }
 
     @Override
     public void cancel() {
-        this.events = new ArrayList<>();
-        this.completed = true;
-        this.cancelled = true;
+        events.clear();
+        super.cancel();
+    }
+
+    @Override
+    void drop() {
+        events.clear();
+        super.drop();
     }
 }
@@ -62,18 +62,19 @@ public class InterruptibleTask extends Interruptible {
 
     @Override
     void cycle() {
-        if(cancelled) {
-            this.onCancelled.execute();
-            return;
-        }
-
         if(event != null) {
             event.execute();
         }
 
+        if(cancelled) {
+            return;
+        }
+
         if(completeCondition != null && completeCondition.check()) {
             this.completed = true;
-            this.onCompleted.execute();
+            if(this.onCompleted != null) {
+                this.onCompleted.execute();
+            }
         }
     }
 }
@@ -1,44 +1,207 @@
 package io.nozemi.runescape.tasksystem;
 
+import io.nozemi.runescape.model.Entity;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectHeapPriorityQueue;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
+/**
+ * Runs the submitted chains and tasks at the end of every cycle. Chains wait in a queue ordered by the tick of their
+ * next step, so a chain costs nothing on the ticks in between; tasks run every tick until they complete. Cancelled
+ * ones get their cancel callback at the end of the cycle they were cancelled in.
+ * <p>
+ * A chain cancelled while waiting stays in the queue until it comes up. When such chains make up most of the queue,
+ * it is rebuilt without them, so chains that are cancelled long before their next step don't pile up.
+ * <p>
+ * What is live is also kept per entity, to cancel it when the entity stops its actions and to drop it when the entity
+ * leaves the world.
+ */
 public class TaskManager {
 
     private static final Logger logger = LogManager.getLogger(TaskManager.class);
 
-    private final static Map<Integer, List<Interruptible>> playerChains = new HashMap<>();
-    private final static Map<Integer, List<Interruptible>> loginEvents = new HashMap<>();
+    private static final Reference2ObjectOpenHashMap<Entity, ObjectArrayList<Interruptible>> byEntity = new Reference2ObjectOpenHashMap<>();
+    private static final ObjectHeapPriorityQueue<InterruptibleChain> chains = new ObjectHeapPriorityQueue<>(
+            (a, b) -> Long.compare(a.nextStep, b.nextStep));
+    private static final ObjectArrayList<Interruptible> tasks = new ObjectArrayList<>();
+    private static final ObjectArrayList<Interruptible> cancelled = new ObjectArrayList<>();
 
-    public static Map<Integer, List<Interruptible>> playerChains() {
-        return playerChains;
-    }
+    // Below this many cancelled chains in the queue it is not worth rebuilding
+    private static final int MIN_STALE = 64;
+    private static int stale;
+
+    private static long tick;
+
+    public static void submit(Interruptible interruptible) {
+        if (interruptible.submitted)
+            return;
+        interruptible.submitted = true;
 
-    public static Map<Integer, List<Interruptible>> loginEvents() {
-        return loginEvents;
+        ObjectArrayList<Interruptible> live = byEntity.get(interruptible.entity);
+        if (live == null)
+            byEntity.put(interruptible.entity, live = new ObjectArrayList<>(2));
+        live.add(interruptible);
+
+        if (interruptible instanceof InterruptibleChain) {
+            // Steps without delay run at the end of this cycle, or of the next when submitted by a step
+            InterruptibleChain chain = (InterruptibleChain) interruptible;
+            chain.start(tick + 1);
+            enqueue(chain);
+        } else {
+            tasks.add(interruptible);
+        }
     }
 
-    public static void cyclePlayerChains() {
-        cycle(playerChains);
+    /**
+     * Cancels everything the entity has running.
+     */
+    public static void cancel(Entity entity) {
+        ObjectArrayList<Interruptible> live = byEntity.get(entity);
+        if (live != null) {
+            // Cancelling only schedules the callback, it leaves the list alone
+            for (int i = live.size() - 1; i >= 0; i--)
+                live.get(i).cancel();
+        }
     }
 
-    public static void cycleLoginEvents() {
-        cycle(loginEvents);
+    /**
+     * Drops everything the entity has running, without calling back, for when it left the world.
+     */
+    public static void clear(Entity entity) {
+        ObjectArrayList<Interruptible> live = byEntity.remove(entity);
+        if (live == null)
+            return;
+
+        for (Interruptible interruptible : live) {
+            if (!interruptible.completed)
+                stale(interruptible);
+            interruptible.drop();
+        }
+        cancelled.removeIf(interruptible -> interruptible.entity == entity);
+        compact();
     }
 
-    private static void cycle(Map<Integer, List<Interruptible>> eventsList) {
-        eventsList.forEach((entityIndex, events) -> {
-            for (int i = events.size() - 1; i >= 0; i--) {
-                events.get(i).cycle();
+    public static void cycle() {
+        tick++;
+
+        while (!chains.isEmpty() && chains.first().nextStep <= tick) {
+            InterruptibleChain chain = chains.dequeue();
+            chain.queued = false;
+            if (chain.completed) {
+                stale--;
+                continue; // Cancelled or dropped while waiting
+            }
 
-                if(events.get(i).isCompleted()) {
-                    events.remove(events.get(i));
+            if (run(chain))
+                enqueue(chain);
+        }
+
+        // Tasks submitted during this loop are appended past size, and start next cycle
+        int size = tasks.size();
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            Interruptible task = tasks.get(i);
+            if (!task.completed && run(task))
+                tasks.set(kept++, task);
+        }
+        tasks.removeElements(kept, size);
+
+        for (int i = 0; i < cancelled.size(); i++) {
+            Interruptible interruptible = cancelled.get(i);
+            detach(interruptible);
+            if (interruptible.onCancelled != null) {
+                try {
+                    interruptible.onCancelled.execute();
+                } catch (Exception e) {
+                    logger.error("Error cancelling {} of {}.", interruptible.name, interruptible.entity, e);
                 }
             }
-        });
+        }
+        cancelled.clear();
+    }
+
+    /**
+     * @return the live chains and tasks per entity type, and the entities they belong to, formatted for logging.
+     */
+    public static String summary() {
+        int players = 0, playerTasks = 0, npcs = 0, npcTasks = 0;
+        for (Reference2ObjectOpenHashMap.Entry<Entity, ObjectArrayList<Interruptible>> entry : byEntity.reference2ObjectEntrySet()) {
+            if (entry.getKey().isPlayer()) {
+                players++;
+                playerTasks += entry.getValue().size();
+            } else {
+                npcs++;
+                npcTasks += entry.getValue().size();
+            }
+        }
+        return String.format("Tasks: %d on %d players, %d on %d npcs.", playerTasks, players, npcTasks, npcs);
+    }
+
+    static long tick() {
+        return tick;
     }
+
+    /**
+     * Has the cancel callback called at the end of the cycle.
+     */
+    static void cancelled(Interruptible interruptible) {
+        cancelled.add(interruptible);
+        stale(interruptible);
+        compact();
+    }
+
+    /**
+     * @return whether it is still running; one that throws is dropped.
+     */
+    private static boolean run(Interruptible interruptible) {
+        try {
+            interruptible.cycle();
+        } catch (Exception e) {
+            logger.error("Error running {} of {}.", interruptible.name, interruptible.entity, e);
+            interruptible.completed = true;
+        }
+
+        if (interruptible.completed && !interruptible.cancelled)
+            detach(interruptible);
+        return !interruptible.completed;
+    }
+
+    private static void enqueue(InterruptibleChain chain) {
+        chain.queued = true;
+        chains.enqueue(chain);
+    }
+
+    private static void stale(Interruptible interruptible) {
+        if (interruptible instanceof InterruptibleChain && ((InterruptibleChain) interruptible).queued)
+            stale++;
+    }
+
+    /**
+     * Rebuilds the queue without the cancelled chains once they outnumber the ones still waiting.
+     */
+    private static void compact() {
+        if (stale < MIN_STALE || stale * 2 <= chains.size())
+            return;
+
+        ObjectArrayList<InterruptibleChain> waiting = new ObjectArrayList<>(chains.size() - stale);
+        while (!chains.isEmpty()) {
+            InterruptibleChain chain = chains.dequeue();
+            if (chain.completed)
+                chain.queued = false;
+            else
+                waiting.add(chain);
+        }
+        for (int i = 0; i < waiting.size(); i++)
+            chains.enqueue(waiting.get(i));
+        stale = 0;
+    }
+
+    private static void detach(Interruptible interruptible) {
+        ObjectArrayList<Interruptible> live = byEntity.get(interruptible.entity);
+        if (live != null && live.remove(interruptible) && live.isEmpty())
+            byEntity.remove(interruptible.entity);
+    }
+
 }
@@ -1,6 +1,7 @@
 package io.nozemi.runescape.util.map;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectArrayMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import nl.bartpelle.dawnguard.Container;
 import nl.bartpelle.dawnguard.DataStore;
 import org.apache.logging.log4j.LogManager;
@@ -13,6 +14,7 @@ import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
@@ -45,6 +47,19 @@ public class MapDecryptionKeys {
 		logger.info("Loaded {} map decryption key sets.", keys.size());
 	}
 	
+	/**
+	 * @return a hash of all non-zero keys, independent of the order they were loaded in.
+	 */
+	public static int hash() {
+		int hash = 0;
+		for (Int2ObjectMap.Entry<int[]> entry : keys.int2ObjectEntrySet()) {
+			int[] k = entry.getValue();
+			if ((k[0] | k[1] | k[2] | k[3]) != 0)
+				hash += entry.getIntKey() * 31 + Arrays.hashCode(k);
+		}
+		return hash;
+	}
+	
 	public static int[] get(int region) {
 		if (keys.containsKey(region)) {
 			return keys.get(region);
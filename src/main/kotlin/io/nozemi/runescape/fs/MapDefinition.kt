@@ -6,15 +6,17 @@ import io.nozemi.runescape.model.Tile
 import io.nozemi.runescape.model.World
 import io.nozemi.runescape.model.entity.Player
 import io.nozemi.runescape.model.map.MapObj
+import io.nozemi.runescape.model.map.steroids.CollisionMap
 import java.nio.ByteBuffer
 import kotlin.experimental.and
 
 /**
  * Created by Bart on 8/11/2015.
  */
-class MapDefinition(private val rx: Int, private val rz: Int) : Definition {
+class MapDefinition(private val rx: Int, private val rz: Int, private val collision: CollisionMap) : Definition {
 	
-	val masks by lazy { Array<Array<IntArray>>(4, { Array<IntArray>(64, { IntArray(64) }) }) }
+	// Clip masks live in the world-wide collision map
+	private val region = (rx shl 8) or rz
 	val floors by lazy { Array<Array<ByteArray>>(4, { Array<ByteArray>(64, { ByteArray(64) }) }) }
 	val objs by lazy { Array<Array<Array<ObjectArrayList<MapObj>?>>>(4, { Array<Array<ObjectArrayList<MapObj>?>>(64, { arrayOfNulls<ObjectArrayList<MapObj>?>(64) }) }) }
 	// Only if 'all' defined in #load()
@@ -26,9 +28,28 @@ class MapDefinition(private val rx: Int, private val rz: Int) : Definition {
 	//val heights  by lazy { Array<Array<IntArray>>(4, { Array<IntArray>(64, { IntArray(64) }) })}
 	//val mapSquares by lazy { Array<Array<Array<SceneTile?>>>(4, { Array<Array<SceneTile?>>(64, { arrayOfNulls<SceneTile?>(64) }) }) }
 	
+	/**
+	 * Bumped on every change to the clip masks, so copies of them (like route finder windows) know when to refresh.
+	 */
+	@Volatile
+	var modCount = 0
+		private set
+	
+	fun modified() {
+		modCount++
+	}
+	
+	fun mask(plane: Int, x: Int, y: Int): Int {
+		return collision.get(region, plane, x, y)
+	}
+	
 	fun solidAll() {}
 	
-	fun load(defrepo: DefinitionRepository, map: ByteArray, objects: ByteArray, all: Boolean) {
+	/**
+	 * Decodes the floors and objects of the map. Unless [clip] is false, as for a map evicted and loaded again while its
+	 * clip flags stayed in the collision map, they are also clipped.
+	 */
+	fun load(defrepo: DefinitionRepository, map: ByteArray, objects: ByteArray, all: Boolean, clip: Boolean) {
 		var buffer = ByteBuffer.wrap(map)
 		val baseX = rx * 64
 		val baseZ = rz * 64
@@ -78,7 +99,7 @@ class MapDefinition(private val rx: Int, private val rz: Int) : Definition {
 						var realPlane = plane
 						if ((floors[1][x][y] and 2) == 2.toByte())
 							realPlane--
-						if (realPlane >= 0)
+						if (realPlane >= 0 && clip)
 							addFloor(defrepo, realPlane, x, y, true)
 					}
 				}
@@ -121,9 +142,11 @@ class MapDefinition(private val rx: Int, private val rz: Int) : Definition {
 							objs[targetLevel][x][z] = ObjectArrayList<MapObj>()
 						objs[targetLevel][x][z]!!.add(MapObj(Tile(baseX + x, baseZ + z, targetLevel), id, type, rotation))
 					}
-					try {
-						clip(defrepo, id, x, z, targetLevel, type, rotation, true)
-					} catch (ignored: Exception) {
+					if (clip) {
+						try {
+							clip(defrepo, id, x, z, targetLevel, type, rotation, true)
+						} catch (ignored: Exception) {
+						}
 					}
 				}
 			}
@@ -599,8 +622,10 @@ class MapDefinition(private val rx: Int, private val rz: Int) : Definition {
 	}
 	
 	fun setMask(plane: Int, x: Int, y: Int, mask: Int) {
-		if (x >= 0 && x < 64 && y >= 0 && y < 64)
-			masks[plane][x][y] = mask
+		if (x >= 0 && x < 64 && y >= 0 && y < 64) {
+			collision.set(region, plane, x, y, mask)
+			modified()
+		}
 	}
 	/*public void addMask(int plane, int x, int y, int mask) {
 		  if (x >= 0 && x < 64 && y >= 0 && y < 64)
@@ -624,23 +649,22 @@ class MapDefinition(private val rx: Int, private val rz: Int) : Definition {
 			if (mapDefinition != null) {
 				val newx = (rx * 64 + x) and 0x3f
 				val newz = (rz * 64 + y) and 0x3f
-				if (add) {
-					mapDefinition.masks[plane][newx][newz] = mapDefinition.masks[plane][newx][newz] or mask
-				} else
-					mapDefinition.masks[plane][newx][newz] = mapDefinition.masks[plane][newx][newz] and (mask.inv())
+				mapDefinition.addMask(repository, plane, newx, newz, mask, add)
 			}
 			return
 		}
 		if (add)
-			masks[plane][x][y] = masks[plane][x][y] or mask
-		else {
-			masks[plane][x][y] = masks[plane][x][y] and (mask.inv())
-		}
+			collision.add(region, plane, x, y, mask)
+		else
+			collision.remove(region, plane, x, y, mask)
+		modified()
 	}
 	
 	fun removeMask(plane: Int, x: Int, y: Int, mask: Int) {
-		if (x >= 0 && x < 64 && y >= 0 && y < 64)
-			masks[plane][x][y] = masks[plane][x][y] and (mask.inv())
+		if (x >= 0 && x < 64 && y >= 0 && y < 64) {
+			collision.remove(region, plane, x, y, mask)
+			modified()
+		}
 	}
 	
 	private fun readCompact(buffer: ByteBuffer): Int {